@@ -0,0 +1,351 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus.codegen;
+
+import io.mappedbus.MappedBusCodec;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor generating the codecs of the messages annotated with {@link MappedBusCodec}.
+ * <p>
+ * The codec of a message is generated as a class in the same package as the message, named after the
+ * message with "Codec" appended, so "Quote" gets "QuoteCodec" and the nested "Quotes.Bid" gets
+ * "QuotesBidCodec". The fields are laid out largest first, keeping the order of declaration among fields
+ * of the same size, so each field is aligned to its size relative to the start of the record data, and the
+ * record size is rounded up to the size of the largest field. The fields are only aligned in memory when
+ * the record data is, which holds for the fixed size records of a bus but not for variable length records
+ * or the records of a ring, whose data starts 12 bytes into the slot.
+ * <p>
+ * A private field is accessed through its getter and setter, which must not be private.
+ * <p>
+ * The processor is found by javac through META-INF/services when it's on the class path.
+ *
+ */
+public class MappedBusCodecProcessor extends AbstractProcessor {
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(MappedBusCodec.class.getName());
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(MappedBusCodec.class)) {
+			if (element.getKind() != ElementKind.CLASS) {
+				error(element, "@MappedBusCodec can only be used on classes");
+				continue;
+			}
+			TypeElement message = (TypeElement)element;
+			List<Field> fields = fields(message);
+			if (fields != null && isAccessible(message)) {
+				generate(message, element.getAnnotation(MappedBusCodec.class).type(), fields);
+			}
+		}
+		return true;
+	}
+
+	private boolean isAccessible(TypeElement message) {
+		for (Element e = message; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				error(message, "The message class and its enclosing classes must not be private");
+				return false;
+			}
+		}
+		if (!message.getTypeParameters().isEmpty()) {
+			error(message, "The message class must not be generic");
+			return false;
+		}
+		return true;
+	}
+
+	private List<Field> fields(TypeElement message) {
+		List<Field> fields = new ArrayList<Field>();
+		boolean valid = true;
+		for (VariableElement field : ElementFilter.fieldsIn(message.getEnclosedElements())) {
+			Set<Modifier> modifiers = field.getModifiers();
+			if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+				continue;
+			}
+			if (modifiers.contains(Modifier.FINAL)) {
+				error(field, "The fields of a message must not be final");
+				valid = false;
+				continue;
+			}
+			FieldType type = FieldType.of(field.asType().getKind());
+			if (type == null) {
+				error(field, "Unsupported field type " + field.asType() + ", the supported types are boolean, byte, int, long, float and double");
+				valid = false;
+				continue;
+			}
+			Field f = new Field(field.getSimpleName().toString(), type);
+			if (modifiers.contains(Modifier.PRIVATE)) {
+				f.getter = accessor(message, type == FieldType.BOOLEAN ? f.accessor("is") : f.accessor("get"), false, field);
+				if (f.getter == null && type == FieldType.BOOLEAN) {
+					f.getter = accessor(message, f.accessor("get"), false, field);
+				}
+				f.setter = accessor(message, f.accessor("set"), true, field);
+				if (f.getter == null || f.setter == null) {
+					error(field, "The private field " + f.name + " must have a getter and a setter which are not private");
+					valid = false;
+					continue;
+				}
+			}
+			fields.add(f);
+		}
+		if (!valid) {
+			return null;
+		}
+		// sorting is stable, so fields of the same size keep their order
+		Collections.sort(fields, new Comparator<Field>() {
+			public int compare(Field f1, Field f2) {
+				return f2.type.size - f1.type.size;
+			}
+		});
+		return fields;
+	}
+
+	/**
+	 * Looks up the getter or the setter of a private field.
+	 *
+	 * @return the name of the accessor, or null if the message has no such accessor
+	 */
+	private String accessor(TypeElement message, String name, boolean setter, VariableElement field) {
+		Types types = processingEnv.getTypeUtils();
+		for (ExecutableElement method : ElementFilter.methodsIn(message.getEnclosedElements())) {
+			Set<Modifier> modifiers = method.getModifiers();
+			if (!method.getSimpleName().contentEquals(name) || modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+				continue;
+			}
+			List<? extends VariableElement> params = method.getParameters();
+			if (!setter) {
+				if (params.isEmpty() && types.isSameType(method.getReturnType(), field.asType())) {
+					return name;
+				}
+			} else if (params.size() == 1 && types.isSameType(params.get(0).asType(), field.asType())) {
+				return name;
+			}
+		}
+		return null;
+	}
+
+	private void generate(TypeElement message, int type, List<Field> fields) {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(message);
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String messageName = packageName.isEmpty() ? message.getQualifiedName().toString() : message.getQualifiedName().toString().substring(packageName.length() + 1);
+		String codecName = messageName.replace(".", "") + "Codec";
+		String visibility = isPublic(message) ? "public " : "";
+
+		int offset = 0;
+		int alignment = 1;
+		for (Field field : fields) {
+			field.offset = offset;
+			offset += field.type.size;
+			alignment = Math.max(alignment, field.type.size);
+		}
+		int recordSize = (offset + alignment - 1) / alignment * alignment;
+
+		try {
+			PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? codecName : packageName + "." + codecName, message).openWriter());
+			try {
+				if (!packageName.isEmpty()) {
+					out.println("package " + packageName + ";");
+					out.println();
+				}
+				out.println("import io.mappedbus.MappedBusRecord;");
+				out.println("import io.mappedbus.MemoryMappedFile;");
+				out.println();
+				out.println("/**");
+				out.println(" * Codec for {@link " + messageName + "}, generated from its @MappedBusCodec annotation.");
+				out.println(" */");
+				out.println(visibility + "final class " + codecName + " {");
+				out.println();
+				out.println("\tpublic static final int TYPE = " + type + ";");
+				out.println();
+				out.println("\tpublic static final int RECORD_SIZE = " + recordSize + ";");
+				for (Field field : fields) {
+					out.println();
+					out.println("\tpublic static final int " + field.constant() + " = " + field.offset + ";");
+				}
+				out.println();
+				out.println("\tprivate " + codecName + "() {");
+				out.println("\t}");
+				out.println();
+				out.println("\tpublic static void write(" + messageName + " message, MemoryMappedFile mem, long pos) {");
+				for (Field field : fields) {
+					out.println("\t\tmem." + field.type.put + "(pos + " + field.constant() + ", " + field.type.encode(field.get("message")) + ");");
+				}
+				out.println("\t}");
+				out.println();
+				out.println("\tpublic static void read(" + messageName + " message, MemoryMappedFile mem, long pos) {");
+				for (Field field : fields) {
+					out.println("\t\t" + field.set("message", field.type.decode("mem." + field.type.get + "(pos + " + field.constant() + ")")) + ";");
+				}
+				out.println("\t}");
+				for (Field field : fields) {
+					out.println();
+					out.println("\tpublic static " + field.type.name + " " + field.accessor("get") + "(MappedBusRecord record) {");
+					out.println("\t\treturn " + field.type.decode("record." + field.type.get + "(" + field.constant() + ")") + ";");
+					out.println("\t}");
+					out.println();
+					out.println("\tpublic static void " + field.accessor("put") + "(MappedBusRecord record, " + field.type.name + " value) {");
+					out.println("\t\trecord." + field.type.put + "(" + field.constant() + ", " + field.type.encode("value") + ");");
+					out.println("\t}");
+				}
+				out.println("}");
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			error(message, "Unable to write the codec " + codecName + ": " + e.getMessage());
+		}
+	}
+
+	private static boolean isPublic(TypeElement message) {
+		for (Element e = message; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+			if (!e.getModifiers().contains(Modifier.PUBLIC)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void error(Element element, String msg) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, element);
+	}
+
+	private enum FieldType {
+		LONG("long", 8, "getLong", "putLong", "", ""),
+		DOUBLE("double", 8, "getLong", "putLong", "Double.longBitsToDouble(", "Double.doubleToRawLongBits("),
+		INT("int", 4, "getInt", "putInt", "", ""),
+		FLOAT("float", 4, "getInt", "putInt", "Float.intBitsToFloat(", "Float.floatToRawIntBits("),
+		BYTE("byte", 1, "getByte", "putByte", "", ""),
+		BOOLEAN("boolean", 1, "getByte", "putByte", null, null);
+
+		final String name;
+
+		final int size;
+
+		final String get;
+
+		final String put;
+
+		private final String decoder;
+
+		private final String encoder;
+
+		FieldType(String name, int size, String get, String put, String decoder, String encoder) {
+			this.name = name;
+			this.size = size;
+			this.get = get;
+			this.put = put;
+			this.decoder = decoder;
+			this.encoder = encoder;
+		}
+
+		String decode(String value) {
+			if (this == BOOLEAN) {
+				return value + " != 0";
+			}
+			return decoder.isEmpty() ? value : decoder + value + ")";
+		}
+
+		String encode(String value) {
+			if (this == BOOLEAN) {
+				return value + " ? (byte)1 : (byte)0";
+			}
+			return encoder.isEmpty() ? value : encoder + value + ")";
+		}
+
+		static FieldType of(TypeKind kind) {
+			switch (kind) {
+				case LONG: return LONG;
+				case DOUBLE: return DOUBLE;
+				case INT: return INT;
+				case FLOAT: return FLOAT;
+				case BYTE: return BYTE;
+				case BOOLEAN: return BOOLEAN;
+				default: return null;
+			}
+		}
+	}
+
+	private static class Field {
+
+		private final String name;
+
+		private final FieldType type;
+
+		private int offset;
+
+		private String getter;
+
+		private String setter;
+
+		Field(String name, FieldType type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		String get(String message) {
+			return getter != null ? message + "." + getter + "()" : message + "." + name;
+		}
+
+		String set(String message, String value) {
+			return setter != null ? message + "." + setter + "(" + value + ")" : message + "." + name + " = " + value;
+		}
+
+		String constant() {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < name.length(); i++) {
+				char c = name.charAt(i);
+				if (Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(name.charAt(i - 1))) {
+					sb.append('_');
+				}
+				sb.append(Character.toUpperCase(c));
+			}
+			return sb.append("_OFFSET").toString();
+		}
+
+		String accessor(String prefix) {
+			return prefix + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		}
+	}
+}
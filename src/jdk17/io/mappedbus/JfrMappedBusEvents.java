@@ -0,0 +1,188 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Class recording the events of the writers and readers with JDK Flight Recorder.
+ * <p>
+ * The events are in the "MappedBus" category and are recorded when a recording enables them, e.g. with
+ * -XX:StartFlightRecording. A commit stall is only recorded when the reader waited at least the number of
+ * milliseconds given by the system property "mappedbus.jfr.commitStallThreshold" (default 1), and a
+ * message write only when it took at least the number of microseconds given by
+ * "mappedbus.jfr.slowWriteThreshold" (default 10).
+ *
+ */
+final class JfrMappedBusEvents extends MappedBusEvents {
+
+	private static final EventType SLOW_WRITE = EventType.getEventType(SlowWrite.class);
+
+	private final long commitStallThreshold = Long.getLong("mappedbus.jfr.commitStallThreshold", 1);
+
+	private final long slowWriteThreshold = TimeUnit.MICROSECONDS.toNanos(Long.getLong("mappedbus.jfr.slowWriteThreshold", 10));
+
+	void commitStall(String fileName, long segment, long position, long waited) {
+		if (waited < commitStallThreshold) {
+			return;
+		}
+		CommitStall event = new CommitStall();
+		if (event.isEnabled()) {
+			event.bus = fileName;
+			event.segment = segment;
+			event.position = position;
+			event.waited = waited;
+			event.commit();
+		}
+	}
+
+	void rollback(String fileName, long segment, long position, long waited, boolean byReader) {
+		Rollback event = new Rollback();
+		if (event.isEnabled()) {
+			event.bus = fileName;
+			event.segment = segment;
+			event.position = position;
+			event.waited = waited;
+			event.performer = byReader ? "reader" : "writer";
+			event.commit();
+		}
+	}
+
+	void endOfFile(String fileName, long segment, long position, boolean byReader) {
+		EndOfFile event = new EndOfFile();
+		if (event.isEnabled()) {
+			event.bus = fileName;
+			event.segment = segment;
+			event.position = position;
+			event.side = byReader ? "reader" : "writer";
+			event.commit();
+		}
+	}
+
+	long beginWrite() {
+		return SLOW_WRITE.isEnabled() ? System.nanoTime() : 0;
+	}
+
+	void endWrite(long start, String fileName, long segment, long position, int type) {
+		if (start == 0) {
+			return;
+		}
+		long time = System.nanoTime() - start;
+		if (time >= slowWriteThreshold) {
+			SlowWrite event = new SlowWrite();
+			event.bus = fileName;
+			event.segment = segment;
+			event.position = position;
+			event.messageType = type;
+			event.writeTime = time;
+			event.commit();
+		}
+	}
+
+	@Name("io.mappedbus.CommitStall")
+	@Label("Commit Stall")
+	@Category("MappedBus")
+	@Description("A record was committed after a reader had waited past its spin count for it")
+	@StackTrace(false)
+	static final class CommitStall extends Event {
+
+		@Label("Bus")
+		String bus;
+
+		@Label("Segment")
+		long segment;
+
+		@Label("Position")
+		long position;
+
+		@Label("Waited")
+		@Timespan(Timespan.MILLISECONDS)
+		long waited;
+	}
+
+	@Name("io.mappedbus.Rollback")
+	@Label("Rollback")
+	@Category("MappedBus")
+	@Description("A record was rolled back by a reader after the timeout, or aborted by its writer")
+	static final class Rollback extends Event {
+
+		@Label("Bus")
+		String bus;
+
+		@Label("Segment")
+		long segment;
+
+		@Label("Position")
+		long position;
+
+		@Label("Waited")
+		@Timespan(Timespan.MILLISECONDS)
+		long waited;
+
+		@Label("Performed By")
+		String performer;
+	}
+
+	@Name("io.mappedbus.EndOfFile")
+	@Label("End Of File")
+	@Category("MappedBus")
+	@Description("A write or read failed as the end of the file was reached")
+	static final class EndOfFile extends Event {
+
+		@Label("Bus")
+		String bus;
+
+		@Label("Segment")
+		long segment;
+
+		@Label("Position")
+		long position;
+
+		@Label("Side")
+		String side;
+	}
+
+	@Name("io.mappedbus.SlowWrite")
+	@Label("Slow Message Write")
+	@Category("MappedBus")
+	@Description("MappedBusMessage.write took longer than the threshold")
+	@StackTrace(false)
+	static final class SlowWrite extends Event {
+
+		@Label("Bus")
+		String bus;
+
+		@Label("Segment")
+		long segment;
+
+		@Label("Position")
+		long position;
+
+		@Label("Message Type")
+		int messageType;
+
+		@Label("Write Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long writeTime;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class for accessing a memory mapped file using VarHandles, without sun.misc.Unsafe.
+ * <p>
+ * The file is mapped with FileChannel.map, which limits the size of the file to 2GB, so larger buses
+ * should be segmented. There's no public way to unmap the file, so the mapping is released with
+ * sun.misc.Unsafe.invokeCleaner where it's available, and otherwise when the buffer is garbage collected.
+ * The volatile and atomic accesses require the position to be aligned to the size of the value.
+ *
+ */
+final class VarHandleMemoryBackend extends MemoryBackend {
+
+	private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+	private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+	private final MappedByteBuffer buffer;
+
+	VarHandleMemoryBackend(String loc, long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Files larger than 2GB are not supported by the " + VARHANDLE + " memory backend, use a segmented bus instead: " + loc);
+		}
+		try (RandomAccessFile backingFile = new RandomAccessFile(loc, "rw"); FileChannel ch = backingFile.getChannel()) {
+			backingFile.setLength(size);
+			buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.nativeOrder());
+		}
+	}
+
+	private static MethodHandle invokeCleaner() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field f = unsafeClass.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			return MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class)).bindTo(f.get(null));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	void unmap() throws Exception {
+		if (INVOKE_CLEANER != null) {
+			try {
+				INVOKE_CLEANER.invokeExact((ByteBuffer)buffer);
+			} catch (Throwable t) {
+				throw new Exception("Unable to unmap the file", t);
+			}
+		}
+	}
+
+	byte getByte(long pos) {
+		return buffer.get((int)pos);
+	}
+
+	byte getByteVolatile(long pos) {
+		VarHandle.fullFence();
+		byte val = buffer.get((int)pos);
+		VarHandle.acquireFence();
+		return val;
+	}
+
+	int getInt(long pos) {
+		return buffer.getInt((int)pos);
+	}
+
+	int getIntVolatile(long pos) {
+		return (int)INT.getVolatile(buffer, (int)pos);
+	}
+
+	long getLong(long pos) {
+		return buffer.getLong((int)pos);
+	}
+
+	long getLongVolatile(long pos) {
+		return (long)LONG.getVolatile(buffer, (int)pos);
+	}
+
+	void putByte(long pos, byte val) {
+		buffer.put((int)pos, val);
+	}
+
+	void putByteVolatile(long pos, byte val) {
+		VarHandle.releaseFence();
+		buffer.put((int)pos, val);
+		VarHandle.fullFence();
+	}
+
+	void putInt(long pos, int val) {
+		buffer.putInt((int)pos, val);
+	}
+
+	void putIntVolatile(long pos, int val) {
+		INT.setVolatile(buffer, (int)pos, val);
+	}
+
+	void putLong(long pos, long val) {
+		buffer.putLong((int)pos, val);
+	}
+
+	void putLongVolatile(long pos, long val) {
+		LONG.setVolatile(buffer, (int)pos, val);
+	}
+
+	void putLongOrdered(long pos, long val) {
+		LONG.setRelease(buffer, (int)pos, val);
+	}
+
+	void loadFence() {
+		VarHandle.acquireFence();
+	}
+
+	void getBytes(long pos, byte[] data, int offset, int length) {
+		buffer.get((int)pos, data, offset, length);
+	}
+
+	void setBytes(long pos, byte[] data, int offset, int length) {
+		buffer.put((int)pos, data, offset, length);
+	}
+
+	boolean compareAndSwapInt(long pos, int expected, int value) {
+		return INT.compareAndSet(buffer, (int)pos, expected, value);
+	}
+
+	boolean compareAndSwapLong(long pos, long expected, long value) {
+		return LONG.compareAndSet(buffer, (int)pos, expected, value);
+	}
+
+	long getAndAddLong(long pos, long delta) {
+		return (long)LONG.getAndAdd(buffer, (int)pos, delta);
+	}
+}
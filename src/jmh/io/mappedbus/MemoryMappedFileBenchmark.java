@@ -0,0 +1,113 @@
+package io.mappedbus;
+
+import io.mappedbus.jmh.BenchmarkFiles;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the accessors of MemoryMappedFile used on the hot paths of the writers and readers.
+ *
+ * The memory backend is chosen with "-Dmappedbus.memory=unsafe" or "-Dmappedbus.memory=varhandle"
+ * passed to the forked JVM with -jvmArgsAppend.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryMappedFileBenchmark {
+
+	private static final long SIZE = 4096;
+
+	private File directory;
+
+	private MemoryMappedFile mem;
+
+	private long value;
+
+	@Setup
+	public void setup() throws Exception {
+		directory = BenchmarkFiles.createDirectory();
+		mem = new MemoryMappedFile(new File(directory, "memory").getPath(), SIZE);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		mem.unmap();
+		BenchmarkFiles.delete(directory);
+	}
+
+	@Benchmark
+	public long getLong() {
+		return mem.getLong(64);
+	}
+
+	@Benchmark
+	public void putLong() {
+		mem.putLong(64, value++);
+	}
+
+	@Benchmark
+	public long getLongVolatile() {
+		return mem.getLongVolatile(64);
+	}
+
+	@Benchmark
+	public void putLongVolatile() {
+		mem.putLongVolatile(64, value++);
+	}
+
+	@Benchmark
+	public void putLongOrdered() {
+		mem.putLongOrdered(64, value++);
+	}
+
+	@Benchmark
+	public boolean compareAndSwapInt() {
+		return mem.compareAndSwapInt(64, 0, 0);
+	}
+
+	@Benchmark
+	public long getAndAddLong() {
+		return mem.getAndAddLong(64, 8);
+	}
+
+	@Benchmark
+	public void setBytes(Buffer buffer) {
+		mem.setBytes(64, buffer.bytes, 0, buffer.bytes.length);
+	}
+
+	@Benchmark
+	public void getBytes(Buffer buffer) {
+		mem.getBytes(64, buffer.bytes, 0, buffer.bytes.length);
+	}
+
+	@State(Scope.Thread)
+	public static class Buffer {
+
+		@Param({"12", "256", "1024"})
+		public int length;
+
+		byte[] bytes;
+
+		@Setup
+		public void setup() {
+			bytes = new byte[length];
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package io.mappedbus.jmh;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates and deletes the directories holding the buses of the benchmarks.
+ *
+ * The directories are created in the directory given by the system property "mappedbus.jmh.dir",
+ * or in java.io.tmpdir, so the benchmarks can be pointed at /dev/shm to keep the disk out of the numbers.
+ */
+public final class BenchmarkFiles {
+
+	private BenchmarkFiles() {
+	}
+
+	public static File createDirectory() throws IOException {
+		File parent = new File(System.getProperty("mappedbus.jmh.dir", System.getProperty("java.io.tmpdir")));
+		File directory = File.createTempFile("mappedbus-jmh", "", parent);
+		if (!directory.delete() || !directory.mkdir()) {
+			throw new IOException("Unable to create the directory: " + directory);
+		}
+		return directory;
+	}
+
+	public static void delete(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+}
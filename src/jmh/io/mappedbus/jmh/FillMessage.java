@@ -0,0 +1,55 @@
+package io.mappedbus.jmh;
+
+import io.mappedbus.MappedBusMessage;
+import io.mappedbus.MemoryMappedFile;
+
+/**
+ * Object based message filling a record of a given size, written as longs with an int for the last four bytes.
+ */
+class FillMessage implements MappedBusMessage {
+
+	private final int size;
+
+	private long value;
+
+	FillMessage(int size) {
+		if (size % 4 != 0) {
+			throw new IllegalArgumentException("The size must be a multiple of 4: " + size);
+		}
+		this.size = size;
+	}
+
+	long value() {
+		return value;
+	}
+
+	void setValue(long value) {
+		this.value = value;
+	}
+
+	public int type() {
+		return 0;
+	}
+
+	public void write(MemoryMappedFile mem, long pos) {
+		int i = 0;
+		for (; i + 8 <= size; i += 8) {
+			mem.putLong(pos + i, value);
+		}
+		if (i < size) {
+			mem.putInt(pos + i, (int)value);
+		}
+	}
+
+	public void read(MemoryMappedFile mem, long pos) {
+		long sum = 0;
+		int i = 0;
+		for (; i + 8 <= size; i += 8) {
+			sum += mem.getLong(pos + i);
+		}
+		if (i < size) {
+			sum += mem.getInt(pos + i);
+		}
+		value = sum;
+	}
+}
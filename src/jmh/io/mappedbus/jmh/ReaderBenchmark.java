@@ -0,0 +1,94 @@
+package io.mappedbus.jmh;
+
+import io.mappedbus.MappedBusReader;
+import io.mappedbus.MappedBusWriter;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures MappedBusReader.next followed by reading a byte array or object based message.
+ *
+ * The bus is filled once, and the reader seeks back to the first record when it reaches the end, so
+ * the reader always finds a committed record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderBenchmark {
+
+	private static final int RECORDS = 100000;
+
+	@Param({"12", "64", "256", "1024"})
+	public int recordSize;
+
+	private File directory;
+
+	private MappedBusReader reader;
+
+	private byte[] buffer;
+
+	private FillMessage message;
+
+	@Setup
+	public void setup() throws Exception {
+		directory = BenchmarkFiles.createDirectory();
+		String fileName = new File(directory, "bus").getPath();
+		// room for one more record, so the reader finds the end of the records before the end of the file
+		long fileSize = 8 + (RECORDS + 1L) * (8 + recordSize);
+		buffer = new byte[recordSize];
+		message = new FillMessage(recordSize);
+
+		MappedBusWriter writer = new MappedBusWriter(fileName, fileSize, recordSize);
+		writer.open();
+		for (int i = 0; i < RECORDS; i++) {
+			writer.write(buffer, 0, recordSize);
+		}
+		writer.close();
+
+		reader = new MappedBusReader(fileName, fileSize, recordSize);
+		reader.open();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		reader.close();
+		BenchmarkFiles.delete(directory);
+	}
+
+	@Benchmark
+	public int readBytes() throws Exception {
+		if (!reader.next()) {
+			reader.seek(0);
+			reader.next();
+		}
+		return reader.readBuffer(buffer, 0);
+	}
+
+	@Benchmark
+	public long readObject() throws Exception {
+		if (!reader.next()) {
+			reader.seek(0);
+			reader.next();
+		}
+		reader.readType();
+		reader.readMessage(message);
+		return message.value();
+	}
+}
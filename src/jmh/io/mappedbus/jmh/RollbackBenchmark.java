@@ -0,0 +1,127 @@
+package io.mappedbus.jmh;
+
+import io.mappedbus.MappedBusReader;
+import io.mappedbus.MappedBusWriter;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the rollback path: a reader skipping records which were rolled back, and a reader timing out
+ * on records which were never committed and rolling them back itself.
+ *
+ * A record can only be rolled back by a timeout once, so the timeout benchmark runs a fixed batch of
+ * records per iteration on a newly written bus, reported as the time for the whole batch. The reader has
+ * a timeout of 0, so it gives up after its spin count rather than after a number of milliseconds.
+ */
+public class RollbackBenchmark {
+
+	private static final int RECORD_SIZE = 12;
+
+	private static final int RECORDS = 100000;
+
+	private static final long FILE_SIZE = 8 + (2L * RECORDS + 1) * (8 + RECORD_SIZE);
+
+	@State(Scope.Thread)
+	public static class RolledBack {
+
+		File directory;
+
+		MappedBusReader reader;
+
+		@Setup
+		public void setup() throws Exception {
+			directory = BenchmarkFiles.createDirectory();
+			String fileName = new File(directory, "bus").getPath();
+			MappedBusWriter writer = new MappedBusWriter(fileName, FILE_SIZE, RECORD_SIZE);
+			writer.open();
+			for (int i = 0; i < RECORDS; i++) {
+				writer.tryClaim(RECORD_SIZE);
+				writer.abort();
+			}
+			// a committed record marks the end, where the reader seeks back to the start
+			writer.write(new byte[RECORD_SIZE], 0, RECORD_SIZE);
+			writer.close();
+			reader = new MappedBusReader(fileName, FILE_SIZE, RECORD_SIZE);
+			reader.open();
+		}
+
+		@TearDown
+		public void tearDown() throws Exception {
+			reader.close();
+			BenchmarkFiles.delete(directory);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class TimedOut {
+
+		File directory;
+
+		MappedBusReader reader;
+
+		@Setup(Level.Iteration)
+		public void setup() throws Exception {
+			directory = BenchmarkFiles.createDirectory();
+			String fileName = new File(directory, "bus").getPath();
+			MappedBusWriter writer = new MappedBusWriter(fileName, FILE_SIZE, RECORD_SIZE);
+			writer.open();
+			byte[] buffer = new byte[RECORD_SIZE];
+			for (int i = 0; i < RECORDS; i++) {
+				// the first record of each pair is never committed, as if its writer had crashed
+				long first = writer.claim(2);
+				writer.writeRecord(first, 0, buffer, 0, RECORD_SIZE);
+				writer.commit(writer.writeRecord(first, 1, buffer, 0, RECORD_SIZE), 1);
+			}
+			writer.close();
+			reader = new MappedBusReader(fileName, FILE_SIZE, RECORD_SIZE);
+			reader.setTimeout(0);
+			reader.open();
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() throws Exception {
+			reader.close();
+			BenchmarkFiles.delete(directory);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	@Warmup(iterations = 3, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	@Fork(1)
+	public boolean skipRolledBack(RolledBack state) throws Exception {
+		if (!state.reader.next()) {
+			return false;
+		}
+		state.reader.seek(0);
+		return true;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3, batchSize = RECORDS)
+	@Measurement(iterations = 5, batchSize = RECORDS)
+	@Fork(1)
+	public void timeoutRollback(TimedOut state) throws Exception {
+		// rolls back the record which was never committed, and then reads the committed record after it
+		while (!state.reader.next()) {
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package io.mappedbus.jmh;
+
+import io.mappedbus.MappedBusWriter;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures MappedBusWriter.write for byte array and object based messages, with one writer and with
+ * several writers contending for the limit of the same bus, with and without the padded header which
+ * keeps the limit claimed by the writers apart from the limit published to the readers.
+ *
+ * Each thread has its own writer, as each process would, and each iteration writes to a new segmented
+ * bus, so the disk space used is bounded by what one iteration writes. The number of writers can also be
+ * set for all benchmarks with the -t option.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriterBenchmark {
+
+	static final long FILE_SIZE = 64L * 1024 * 1024;
+
+	@Param({"12", "64", "256", "1024"})
+	public int recordSize;
+
+	@Param({"false", "true"})
+	public boolean padded;
+
+	private File directory;
+
+	private String fileName;
+
+	@Setup(Level.Iteration)
+	public void createBus() throws Exception {
+		directory = BenchmarkFiles.createDirectory();
+		fileName = new File(directory, "bus").getPath();
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteBus() {
+		BenchmarkFiles.delete(directory);
+	}
+
+	@State(Scope.Thread)
+	public static class Writer {
+
+		MappedBusWriter writer;
+
+		byte[] buffer;
+
+		FillMessage message;
+
+		@Setup(Level.Iteration)
+		public void open(WriterBenchmark bus) throws Exception {
+			writer = new MappedBusWriter(bus.fileName, FILE_SIZE, bus.recordSize);
+			writer.setSegmented(true);
+			writer.setPadded(bus.padded);
+			writer.open();
+			buffer = new byte[bus.recordSize];
+			message = new FillMessage(bus.recordSize);
+		}
+
+		@TearDown(Level.Iteration)
+		public void close() throws Exception {
+			writer.close();
+		}
+	}
+
+	@Benchmark
+	public boolean writeBytes(Writer writer) throws Exception {
+		return writer.writer.write(writer.buffer, 0, writer.buffer.length);
+	}
+
+	@Benchmark
+	public boolean writeObject(Writer writer) throws Exception {
+		return writer.writer.write(writer.message);
+	}
+
+	@Benchmark
+	@Threads(2)
+	public boolean writeBytesTwoWriters(Writer writer) throws Exception {
+		return writer.writer.write(writer.buffer, 0, writer.buffer.length);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean writeBytesFourWriters(Writer writer) throws Exception {
+		return writer.writer.write(writer.buffer, 0, writer.buffer.length);
+	}
+}
@@ -0,0 +1,74 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for generating the code reading and writing the fields of a message.
+ * <p>
+ * For an annotated class "PriceUpdate" the annotation processor in io.mappedbus.codegen generates a class
+ * "PriceUpdateCodec" in the same package, with the message type, the offset of each field, the record size
+ * needed, static read and write methods for the message, and getters and setters for reading and writing
+ * the fields of a {@link MappedBusRecord} in place. The fields are laid out largest first, so each field is
+ * aligned to its size relative to the start of the record data, which makes it aligned in memory for the
+ * fixed size records of a bus but not for variable length records or ring records. The code is generated
+ * at compile time, so no reflection is used.
+ * <p>
+ * Private fields are accessed through their getters and setters, static fields and transient fields are
+ * skipped, and the supported field types are boolean, byte, int, long, float and double.
+ * <pre>
+ * {@code
+ * @MappedBusCodec(type = 0)
+ * public class PriceUpdate implements MappedBusMessage {
+ *    long time;
+ *    private int price;
+ *
+ *    public int getPrice() {
+ *       return price;
+ *    }
+ *
+ *    public void setPrice(int price) {
+ *       this.price = price;
+ *    }
+ *
+ *    public int type() {
+ *       return PriceUpdateCodec.TYPE;
+ *    }
+ *
+ *    public void write(MemoryMappedFile mem, long pos) {
+ *       PriceUpdateCodec.write(this, mem, pos);
+ *    }
+ *
+ *    public void read(MemoryMappedFile mem, long pos) {
+ *       PriceUpdateCodec.read(this, mem, pos);
+ *    }
+ * }
+ * }
+ * </pre>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface MappedBusCodec {
+
+	/**
+	 * The message type.
+	 *
+	 * @return the message type
+	 */
+	int type();
+}
@@ -27,6 +27,23 @@ public class MappedBusConstants {
 		
 	}
 
+	public static class PaddedStructure {
+
+		public static final int Limit = 0;
+
+		public static final int Published = Limit + PaddedLength.Padding;
+
+		public static final int Data = Published + PaddedLength.Padding;
+
+	}
+
+	public static class PaddedLength {
+
+		/** Two cache lines, as some processors fetch cache lines in pairs. */
+		public static final int Padding = 128;
+
+	}
+
 	public static class Length {
 		
 		public static final int Limit = 8;
@@ -37,6 +54,14 @@ public class MappedBusConstants {
 
 		public static final int RecordHeader = StatusFlag + Metadata;
 
+		public static final int RecordLength = 4;
+
+		public static final int VariableRecordHeader = StatusFlag + RecordLength + Metadata;
+
+		public static final int RecordAlignment = 8;
+
+		public static final int Timestamp = 8;
+
 	}
 
 	public static class StatusFlag {
@@ -48,4 +73,307 @@ public class MappedBusConstants {
 		public static final byte Rollback = 2;
 
 	}
+
+	public static class RingStructure {
+
+		public static final int Limit = 0;
+
+		public static final int Readers = Limit + PaddedLength.Padding;
+
+		public static final int Data = Readers + RingLength.Readers;
+
+	}
+
+	public static class RingLength {
+
+		public static final int MaxReaders = 32;
+
+		public static final int ReaderState = 4;
+
+		public static final int ReaderPadding = 4;
+
+		public static final int ReaderCursor = 8;
+
+		/** Each reader gets its own cache lines, so a moving cursor doesn't slow down the others. */
+		public static final int Reader = PaddedLength.Padding;
+
+		public static final int Readers = MaxReaders * Reader;
+
+		public static final int Stamp = 8;
+
+		public static final int RecordHeader = Stamp + Length.Metadata;
+
+	}
+
+	public static class IndexStructure {
+
+		public static final int Limit = 0;
+
+		public static final int Data = IndexLength.Limit;
+
+	}
+
+	public static class IndexLength {
+
+		public static final int Limit = 8;
+
+		public static final int Timestamp = 8;
+
+		public static final int Position = 8;
+
+		public static final int Entry = Timestamp + Position;
+
+		public static final int Interval = 64 * 1024;
+
+	}
+
+	public static class TopicStructure {
+
+		public static final int State = 0;
+
+		public static final int NameLength = State + TopicLength.State;
+
+		public static final int Name = NameLength + TopicLength.NameLength;
+
+		public static final int FileSize = Name + TopicLength.Name;
+
+		public static final int RecordSize = FileSize + TopicLength.FileSize;
+
+		public static final int Flags = RecordSize + TopicLength.RecordSize;
+
+	}
+
+	public static class TopicLength {
+
+		public static final int MaxTopics = 1024;
+
+		public static final int State = 4;
+
+		public static final int NameLength = 4;
+
+		public static final int Name = 48;
+
+		public static final int FileSize = 8;
+
+		public static final int RecordSize = 4;
+
+		public static final int Flags = 4;
+
+		public static final int Topic = State + NameLength + Name + FileSize + RecordSize + Flags;
+
+		public static final int Directory = MaxTopics * Topic;
+
+	}
+
+	public static class TopicFlag {
+
+		public static final int Segmented = 1;
+
+		public static final int VariableLength = 2;
+
+		public static final int Timestamped = 4;
+
+		public static final int Coordinated = 8;
+
+		public static final int Padded = 16;
+
+		public static final int Aligned = 32;
+
+	}
+
+	public static class TopicState {
+
+		public static final int Free = 0;
+
+		public static final int Active = 1;
+
+		public static final int Abandoned = 2;
+
+		public static final int Claimed = 3;
+
+	}
+
+	public static class OffsetsStructure {
+
+		public static final int State = 0;
+
+		public static final int NameLength = State + OffsetsLength.State;
+
+		public static final int Name = NameLength + OffsetsLength.NameLength;
+
+		public static final int Position = Name + OffsetsLength.Name;
+
+	}
+
+	public static class OffsetsLength {
+
+		public static final int MaxSubscriptions = 64;
+
+		public static final int State = 4;
+
+		public static final int NameLength = 4;
+
+		public static final int Name = 48;
+
+		public static final int Position = 8;
+
+		public static final int Subscription = State + NameLength + Name + Position;
+
+		public static final int Offsets = MaxSubscriptions * Subscription;
+
+	}
+
+	public static class MetricsStructure {
+
+		public static final int FileSize = 0;
+
+		public static final int EntrySize = FileSize + MetricsLength.FileSize;
+
+		public static final int Flags = EntrySize + MetricsLength.EntrySize;
+
+		public static final int Slots = MetricsLength.Header;
+
+		public static final int State = 0;
+
+		public static final int Type = State + MetricsLength.State;
+
+		public static final int Position = Type + MetricsLength.Type;
+
+		public static final int Counters = Position + MetricsLength.Position;
+
+	}
+
+	public static class MetricsLength {
+
+		public static final int FileSize = 8;
+
+		public static final int EntrySize = 4;
+
+		public static final int Flags = 4;
+
+		public static final int Header = 64;
+
+		public static final int MaxSlots = 64;
+
+		public static final int State = 4;
+
+		public static final int Type = 4;
+
+		public static final int Position = 8;
+
+		public static final int Counter = 8;
+
+		public static final int Slot = 128;
+
+		public static final int Metrics = Header + MaxSlots * Slot;
+
+	}
+
+	/**
+	 * The counters of the metrics file, see {@link MappedBusMonitor}.
+	 */
+	public static class MetricsCounter {
+
+		/** Records claimed by the writers. */
+		public static final int Written = 0;
+
+		/** Records committed by the writers. */
+		public static final int Committed = 1;
+
+		/** Records a writer failed to commit as a reader had already rolled them back. */
+		public static final int CommitFailed = 2;
+
+		/** Records rolled back by the writers. */
+		public static final int Aborted = 3;
+
+		/** Records read by the readers. */
+		public static final int Read = 4;
+
+		/** Rolled back records skipped by the readers. */
+		public static final int Skipped = 5;
+
+		/** Records rolled back by the readers after timing out waiting for them to be committed. */
+		public static final int TimedOut = 6;
+
+		/** Writes and reads failing as the end of the file was reached. */
+		public static final int EndOfFile = 7;
+
+		/** Records rolled back by the readers as the writer owning them had died. */
+		public static final int DeadWriter = 8;
+
+		public static final int Count = 9;
+
+	}
+
+	public static class MetricsType {
+
+		public static final int Writer = 1;
+
+		public static final int Reader = 2;
+
+	}
+
+	public static class MetricsFlag {
+
+		public static final int Segmented = 1;
+
+	}
+
+	public static class WriterTableStructure {
+
+		public static final int State = 0;
+
+		public static final int Pid = State + WriterTableLength.State + WriterTableLength.Padding;
+
+		public static final int Heartbeat = Pid + WriterTableLength.Pid;
+
+		public static final int Start = Heartbeat + WriterTableLength.Heartbeat;
+
+		public static final int End = Start + WriterTableLength.Start;
+
+	}
+
+	public static class WriterTableLength {
+
+		public static final int MaxWriters = 64;
+
+		public static final int State = 4;
+
+		public static final int Padding = 4;
+
+		public static final int Pid = 8;
+
+		public static final int Heartbeat = 8;
+
+		public static final int Start = 8;
+
+		public static final int End = 8;
+
+		public static final int Writer = 64;
+
+		public static final int Writers = MaxWriters * Writer;
+
+	}
+
+	public static class WriterState {
+
+		public static final int Free = 0;
+
+		public static final int Active = 1;
+
+		public static final int Claimed = 2;
+
+	}
+
+	public static class ReaderState {
+
+		public static final int Free = 0;
+
+		public static final int Active = 1;
+
+		public static final int Dropped = 2;
+
+		public static final int Claimed = 3;
+
+	}
 }
\ No newline at end of file
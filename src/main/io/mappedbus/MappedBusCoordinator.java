@@ -0,0 +1,110 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import java.io.EOFException;
+
+/**
+ * Class for rolling back the records which aren't committed in time, on behalf of the coordinated readers
+ * of a bus.
+ * <p>
+ * Without a coordinator each reader waiting for the same record times out on its own, and they all take
+ * the same stall. The coordinator follows the bus with a reader of its own, and is the only one to roll
+ * back records, using the timeout and liveness settings of its reader, so the policy is set in one place.
+ * The readers set up with {@link MappedBusReader#setCoordinated(boolean)}, or created by a manager for a
+ * topic with the {@link MappedBusConstants.TopicFlag#Coordinated} flag, only follow the status flags.
+ * <p>
+ * The coordinator reads the bus from the start, like any reader, so the records left behind by writers
+ * which died before it was started are rolled back too.
+ * <p>
+ * The coordinator can run in a thread next to the readers, or in a process of its own:
+ * <pre>
+ * {@code
+ * MappedBusReader reader = new MappedBusReader("/tmp/test", 100000L, 32);
+ * reader.setTimeout(500);
+ * reader.setLiveness(true);
+ * reader.open();
+ *
+ * MappedBusCoordinator coordinator = new MappedBusCoordinator(reader);
+ * coordinator.run(new MappedBusWaitStrategy.Park(1, 1000));
+ * }
+ * </pre>
+ * <pre>
+ * > java -cp mappedbus.jar io.mappedbus.MappedBusCoordinator /tmp/bus/directory prices 500
+ * </pre>
+ */
+public class MappedBusCoordinator {
+
+	private final MappedBusReader reader;
+
+	private volatile boolean stopped;
+
+	/**
+	 * Constructs a new coordinator.
+	 *
+	 * @param reader the reader used to follow the bus, which must not be coordinated itself
+	 */
+	public MappedBusCoordinator(MappedBusReader reader) {
+		if (reader.isCoordinated()) {
+			throw new IllegalArgumentException("The reader of the coordinator must not be coordinated");
+		}
+		this.reader = reader;
+	}
+
+	/**
+	 * Follows the bus until stopped, rolling back the records which time out, and using the wait strategy
+	 * while there are no new records.
+	 *
+	 * @param waitStrategy the wait strategy
+	 * @throws EOFException in case the end of the file was reached
+	 */
+	public void run(MappedBusWaitStrategy waitStrategy) throws EOFException {
+		int idleCount = 0;
+		while (!stopped) {
+			if (reader.next()) {
+				idleCount = 0;
+			} else {
+				waitStrategy.idle(idleCount);
+				if (idleCount < Integer.MAX_VALUE) {
+					idleCount++;
+				}
+			}
+		}
+		stopped = false;
+	}
+
+	/**
+	 * Stops the coordinator, or stops the next call to run() right away if the coordinator isn't running.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: MappedBusCoordinator directoryName topic [timeout in ms]");
+			System.exit(1);
+		}
+		MappedBusManager manager = new MappedBusManager(args[0]);
+		manager.open();
+		MappedBusReader reader = manager.createReader(args[1]);
+		reader.setCoordinated(false);
+		reader.setLiveness(true);
+		if (args.length > 2) {
+			reader.setTimeout(Integer.parseInt(args[2]));
+		}
+		reader.open();
+		new MappedBusCoordinator(reader).run(new MappedBusWaitStrategy.Park(1, 1000));
+	}
+}
@@ -0,0 +1,144 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import java.io.EOFException;
+import java.util.Arrays;
+
+/**
+ * Class for dispatching object based messages to handlers registered by message type.
+ * <p>
+ * A message instance and a handler are registered for each type, and the dispatcher reads each record
+ * into the instance registered for its type, found by indexing an array with the type, before handing
+ * it to the handler. No objects are allocated while dispatching.
+ * <p>
+ * The typical usage is as follows:
+ * <pre>
+ * {@code
+ * MappedBusDispatcher dispatcher = new MappedBusDispatcher();
+ * dispatcher.register(new PriceUpdate(), new MappedBusDispatcher.Handler<PriceUpdate>() {
+ *    public void onMessage(PriceUpdate priceUpdate) {
+ *       ...
+ *    }
+ * });
+ *
+ * // A: dispatch the available records
+ * reader.poll(dispatcher, 100);
+ *
+ * // B: dispatch records until stopped, parking while the bus is idle
+ * dispatcher.run(reader, new MappedBusWaitStrategy.Park(1, 1000));
+ * }
+ * </pre>
+ */
+public class MappedBusDispatcher implements MappedBusHandler {
+
+	/**
+	 * Interface for handling the messages of one type.
+	 *
+	 * @param <T> the message class
+	 */
+	public interface Handler<T extends MappedBusMessage> {
+
+		/**
+		 * Called for each message of the type the handler was registered for.
+		 *
+		 * The message instance is reused for every message of the type.
+		 *
+		 * @param message the message
+		 */
+		public void onMessage(T message);
+	}
+
+	private static final int BATCH_SIZE = 256;
+
+	private MappedBusMessage[] messages = new MappedBusMessage[0];
+
+	@SuppressWarnings("rawtypes")
+	private Handler[] handlers = new Handler[0];
+
+	private MappedBusHandler defaultHandler;
+
+	private volatile boolean stopped;
+
+	/**
+	 * Registers the message instance and handler for a message type, given by the type of the message.
+	 *
+	 * @param message the message instance to read the records of the type into
+	 * @param handler the handler to call for each message of the type
+	 * @param <T> the message class
+	 */
+	public <T extends MappedBusMessage> void register(T message, Handler<? super T> handler) {
+		int type = message.type();
+		if (type < 0) {
+			throw new IllegalArgumentException("Invalid message type: " + type);
+		}
+		if (type >= messages.length) {
+			messages = Arrays.copyOf(messages, type + 1);
+			handlers = Arrays.copyOf(handlers, type + 1);
+		}
+		messages[type] = message;
+		handlers[type] = handler;
+	}
+
+	/**
+	 * Sets the handler for records of a type with no registered handler. By default such records are skipped.
+	 *
+	 * @param defaultHandler the handler, called with the reader positioned after the message type
+	 */
+	public void setDefaultHandler(MappedBusHandler defaultHandler) {
+		this.defaultHandler = defaultHandler;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void onRecord(MappedBusReader reader) {
+		int type = reader.readType();
+		if (type >= 0 && type < handlers.length && handlers[type] != null) {
+			MappedBusMessage message = messages[type];
+			reader.readMessage(message);
+			handlers[type].onMessage(message);
+		} else if (defaultHandler != null) {
+			defaultHandler.onRecord(reader);
+		}
+	}
+
+	/**
+	 * Dispatches records until stopped, using the wait strategy while there are no new records.
+	 *
+	 * @param reader the reader to dispatch the records of
+	 * @param waitStrategy the wait strategy
+	 * @throws EOFException in case the end of the file was reached
+	 */
+	public void run(MappedBusReader reader, MappedBusWaitStrategy waitStrategy) throws EOFException {
+		int idleCount = 0;
+		while (!stopped) {
+			if (reader.poll(this, BATCH_SIZE) > 0) {
+				idleCount = 0;
+			} else {
+				waitStrategy.idle(idleCount);
+				if (idleCount < Integer.MAX_VALUE) {
+					idleCount++;
+				}
+			}
+		}
+		stopped = false;
+	}
+
+	/**
+	 * Stops the dispatcher after the current batch of records, or stops the next call to run() right away
+	 * if the dispatcher isn't running.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+/**
+ * Class for the events reported by the writers and readers, such as rollbacks and stalled commits.
+ * <p>
+ * The events are recorded with JDK Flight Recorder when the JFR implementation is available, which is
+ * built with Java 17 or later, unless the system property "mappedbus.jfr" is set to "false". Otherwise
+ * the events are ignored. Only one implementation is loaded, so the calls are inlined by the JIT, and
+ * the JFR implementation checks whether an event is enabled before doing any work.
+ * <p>
+ * The events are identified by the name of the bus, the segment number and the position in the segment.
+ *
+ */
+abstract class MappedBusEvents {
+
+	static final String PROPERTY = "mappedbus.jfr";
+
+	private static final String JFR_CLASS = "io.mappedbus.JfrMappedBusEvents";
+
+	static final MappedBusEvents EVENTS = select();
+
+	private static MappedBusEvents select() {
+		if (!"false".equals(System.getProperty(PROPERTY))) {
+			try {
+				return (MappedBusEvents)Class.forName(JFR_CLASS).getDeclaredConstructor().newInstance();
+			} catch(Throwable t) {
+				// the JFR events are only built with Java 17 or later
+			}
+		}
+		return new Disabled();
+	}
+
+	/**
+	 * Reports a record which was committed after a reader had waited past its spin count for it.
+	 *
+	 * @param waited the time the reader waited after spinning, in milliseconds
+	 */
+	abstract void commitStall(String fileName, long segment, long position, long waited);
+
+	/**
+	 * Reports a record rolled back by a reader after the timeout, or aborted by its writer.
+	 *
+	 * @param waited the time the reader waited after spinning, in milliseconds, or 0 for an abort
+	 * @param byReader true, if a reader rolled back the record, or false if the writer aborted it
+	 */
+	abstract void rollback(String fileName, long segment, long position, long waited, boolean byReader);
+
+	/**
+	 * Reports a write or read failing as the end of the file was reached.
+	 */
+	abstract void endOfFile(String fileName, long segment, long position, boolean byReader);
+
+	/**
+	 * Returns the start time of a message write to measure, or 0 if slow writes aren't recorded.
+	 */
+	abstract long beginWrite();
+
+	/**
+	 * Reports the end of a message write started with {@link #beginWrite()}.
+	 *
+	 * @param start the value returned by beginWrite
+	 */
+	abstract void endWrite(long start, String fileName, long segment, long position, int type);
+
+	private static final class Disabled extends MappedBusEvents {
+
+		void commitStall(String fileName, long segment, long position, long waited) {
+		}
+
+		void rollback(String fileName, long segment, long position, long waited, boolean byReader) {
+		}
+
+		void endOfFile(String fileName, long segment, long position, boolean byReader) {
+		}
+
+		long beginWrite() {
+			return 0;
+		}
+
+		void endWrite(long start, String fileName, long segment, long position, int type) {
+		}
+	}
+}
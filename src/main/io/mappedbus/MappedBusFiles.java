@@ -0,0 +1,119 @@
+/* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License. 
+* You may obtain a copy of the License at 
+* 
+* http://www.apache.org/licenses/LICENSE-2.0 
+* 
+* Unless required by applicable law or agreed to in writing, software 
+* distributed under the License is distributed on an "AS IS" BASIS, 
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+* See the License for the specific language governing permissions and 
+* limitations under the License. 
+*/
+package io.mappedbus;
+
+import java.io.File;
+
+/**
+ * Class with the naming rules for the files making up a bus.
+ *
+ */
+class MappedBusFiles {
+
+	/**
+	 * Returns the name of a segment file.
+	 *
+	 * @param fileName the name of the bus
+	 * @param segment the segment number
+	 * @return the name of the segment file
+	 */
+	static String segment(String fileName, long segment) {
+		return fileName + "." + segment;
+	}
+
+	/**
+	 * Returns the name of the sparse time index of a bus file or segment file.
+	 *
+	 * @param fileName the name of the bus file or segment file
+	 * @return the name of the index file
+	 */
+	static String index(String fileName) {
+		return fileName + ".index";
+	}
+
+	/**
+	 * Returns the name of the file storing the positions of the named subscriptions.
+	 *
+	 * @param fileName the name of the bus
+	 * @return the name of the offsets file
+	 */
+	static String offsets(String fileName) {
+		return fileName + ".offsets";
+	}
+
+	/**
+	 * Returns the name of the file holding the metrics counters of a bus.
+	 *
+	 * @param fileName the name of the bus
+	 * @return the name of the metrics file
+	 */
+	static String metrics(String fileName) {
+		return fileName + ".metrics";
+	}
+
+	/**
+	 * Returns the name of the file holding the table of the writers of a bus.
+	 *
+	 * @param fileName the name of the bus
+	 * @return the name of the writer table file
+	 */
+	static String writers(String fileName) {
+		return fileName + ".writers";
+	}
+
+	/**
+	 * Returns the lowest and highest segment numbers found on disk.
+	 *
+	 * @param fileName the name of the bus
+	 * @return an array with the first and the last segment, or {-1, -1} if there are no segments
+	 */
+	static long[] segments(String fileName) {
+		long first = -1;
+		long last = -1;
+		File file = new File(fileName).getAbsoluteFile();
+		String prefix = file.getName() + ".";
+		String[] names = file.getParentFile().list();
+		if (names != null) {
+			for (String name : names) {
+				if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+					continue;
+				}
+				long segment = parseSegment(name.substring(prefix.length()));
+				if (segment < 0) {
+					continue;
+				}
+				if (first == -1 || segment < first) {
+					first = segment;
+				}
+				if (segment > last) {
+					last = segment;
+				}
+			}
+		}
+		return new long[] {first, last};
+	}
+
+	private static long parseSegment(String suffix) {
+		for (int i = 0; i < suffix.length(); i++) {
+			if (!Character.isDigit(suffix.charAt(i))) {
+				return -1;
+			}
+		}
+		try {
+			return Long.parseLong(suffix);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License. 
+* You may obtain a copy of the License at 
+* 
+* http://www.apache.org/licenses/LICENSE-2.0 
+* 
+* Unless required by applicable law or agreed to in writing, software 
+* distributed under the License is distributed on an "AS IS" BASIS, 
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+* See the License for the specific language governing permissions and 
+* limitations under the License. 
+*/
+package io.mappedbus;
+
+/**
+ * Interface for handling the records delivered by {@link MappedBusReader#poll(MappedBusHandler, int)}.
+ *
+ */
+public interface MappedBusHandler {
+
+	/**
+	 * Called for each committed record.
+	 *
+	 * The record is read using the read methods of the reader, in the same way as after a call to next().
+	 *
+	 * @param reader the reader positioned at the record
+	 */
+	public void onRecord(MappedBusReader reader);
+}
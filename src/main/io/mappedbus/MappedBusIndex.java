@@ -0,0 +1,111 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import io.mappedbus.MappedBusConstants.IndexLength;
+import io.mappedbus.MappedBusConstants.IndexStructure;
+
+import java.io.IOException;
+
+/**
+ * Class for the sparse time index of a bus file with variable length records.
+ * <p>
+ * The writers add an entry with the timestamp and position of each record crossing a multiple of the
+ * index interval, so a search by time only has to scan the records between two entries. The position of
+ * an entry is stored last, so an entry with a position of 0 is still being written.
+ *
+ */
+class MappedBusIndex {
+
+	private final MemoryMappedFile mem;
+
+	private final long size;
+
+	private MappedBusIndex(MemoryMappedFile mem, long size) {
+		this.mem = mem;
+		this.size = size;
+	}
+
+	/**
+	 * Opens the index of a bus file.
+	 *
+	 * @param fileName the name of the bus file or segment file
+	 * @param fileSize the size of the bus file
+	 * @return the index
+	 * @throws IOException if there was a problem opening the file
+	 */
+	static MappedBusIndex open(String fileName, long fileSize) throws IOException {
+		String name = MappedBusFiles.index(fileName);
+		long size = IndexStructure.Data + (fileSize / IndexLength.Interval + 1) * IndexLength.Entry;
+		MemoryMappedFile mem;
+		try {
+			mem = new MemoryMappedFile(name, size);
+		} catch(Exception e) {
+			throw new IOException("Unable to open the file: " + name, e);
+		}
+		mem.compareAndSwapLong(IndexStructure.Limit, 0, IndexStructure.Data);
+		return new MappedBusIndex(mem, size);
+	}
+
+	/**
+	 * Returns whether a record crosses a multiple of the index interval, and should be added to the index.
+	 */
+	static boolean isIndexed(long position, int recordLength) {
+		return position / IndexLength.Interval != (position + recordLength) / IndexLength.Interval;
+	}
+
+	void append(long timestamp, long position) {
+		long pos = mem.getAndAddLong(IndexStructure.Limit, IndexLength.Entry);
+		if (pos + IndexLength.Entry > size) {
+			return;
+		}
+		mem.putLong(pos, timestamp);
+		mem.putLongOrdered(pos + IndexLength.Timestamp, position);
+	}
+
+	/**
+	 * Finds the position to start searching for a time from.
+	 *
+	 * @param time the time searched for
+	 * @return the position of the last indexed record with an earlier timestamp, or 0 if there's none
+	 */
+	long find(long time) {
+		long entries = (Math.min(mem.getLongVolatile(IndexStructure.Limit), size) - IndexStructure.Data) / IndexLength.Entry;
+		long lo = 0;
+		long hi = entries;
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (mem.getLongVolatile(entry(mid)) < time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		for (long i = lo - 1; i >= 0; i--) {
+			long position = mem.getLongVolatile(entry(i) + IndexLength.Timestamp);
+			if (position != 0) {
+				return position;
+			}
+		}
+		return 0;
+	}
+
+	private long entry(long i) {
+		return IndexStructure.Data + i * IndexLength.Entry;
+	}
+
+	void close() throws Exception {
+		mem.unmap();
+	}
+}
@@ -0,0 +1,299 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import io.mappedbus.MappedBusConstants.TopicFlag;
+import io.mappedbus.MappedBusConstants.TopicLength;
+import io.mappedbus.MappedBusConstants.TopicState;
+import io.mappedbus.MappedBusConstants.TopicStructure;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Class for managing a number of buses, called topics, through a shared directory file.
+ * <p>
+ * The directory file holds the name, file size, record size and mode of each topic, so the processes
+ * only have to agree on the name of the directory and of the topics. The files of the topics are
+ * stored next to the directory file, named after the topic. An entry left half written by a process which
+ * crashed while defining a topic is abandoned after a timeout, and the topic is defined in the next entry.
+ * <p>
+ * The managers of a JVM, and the writers and readers they create, share one mapping of the directory
+ * file and of each bus file or segment, looked up by its canonical path. The index, offsets, metrics and
+ * writer table files next to a bus are still mapped by each writer and reader.
+ * <p>
+ * The typical usage is as follows:
+ * <pre>
+ * {@code
+ * MappedBusManager manager = new MappedBusManager("/tmp/bus/directory");
+ * manager.open();
+ *
+ * // Define a topic, or check that it's already defined with the same layout
+ * manager.createTopic("prices", 100000L, 32, TopicFlag.Segmented);
+ *
+ * MappedBusWriter writer = manager.createWriter("prices");
+ * writer.open();
+ *
+ * MappedBusReader reader = manager.createReader("prices");
+ * reader.open();
+ * }
+ * </pre>
+ */
+public class MappedBusManager {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final long CLAIM_TIMEOUT = 2000;
+
+	private final String directoryName;
+
+	private final File baseDir;
+
+	private MemoryMappedFile directory;
+
+	private static final Map<String, Mapping> mappings = new HashMap<String, Mapping>();
+
+	private static final Map<MemoryMappedFile, Mapping> mappingsByFile = new IdentityHashMap<MemoryMappedFile, Mapping>();
+
+	/**
+	 * Constructs a new manager.
+	 *
+	 * @param directoryName the name of the directory file
+	 */
+	public MappedBusManager(String directoryName) {
+		this.directoryName = directoryName;
+		this.baseDir = new File(directoryName).getAbsoluteFile().getParentFile();
+	}
+
+	/**
+	 * Opens the manager.
+	 *
+	 * @throws IOException if there was a problem opening the directory file
+	 */
+	public void open() throws IOException {
+		try {
+			directory = map(directoryName, TopicLength.Directory);
+		} catch(Exception e) {
+			throw new IOException("Unable to open the file: " + directoryName, e);
+		}
+	}
+
+	/**
+	 * Defines a topic, or checks that the topic is already defined with the same layout.
+	 *
+	 * @param topic the name of the topic, made up of letters, digits, '_' and '-'
+	 * @param fileSize the maximum size of the file (or of each segment)
+	 * @param recordSize the maximum size of a record (excluding status flags and meta data)
+	 * @param flags the modes of the topic, see {@link TopicFlag}
+	 * @throws IOException if the topic is defined with a different layout, or all entries are in use
+	 */
+	public void createTopic(String topic, long fileSize, int recordSize, int flags) throws IOException {
+		byte[] name = name(topic);
+		for (int i = 0; i < TopicLength.MaxTopics; i++) {
+			long entry = (long)i * TopicLength.Topic;
+			if (directory.compareAndSwapInt(entry + TopicStructure.State, TopicState.Free, TopicState.Claimed)) {
+				directory.putLong(entry + TopicStructure.FileSize, fileSize);
+				directory.putInt(entry + TopicStructure.RecordSize, recordSize);
+				directory.putInt(entry + TopicStructure.Flags, flags);
+				directory.putInt(entry + TopicStructure.NameLength, name.length);
+				directory.setBytes(entry + TopicStructure.Name, name, 0, name.length);
+				if (directory.compareAndSwapInt(entry + TopicStructure.State, TopicState.Claimed, TopicState.Active)) {
+					return;
+				}
+				// this process was too slow and the entry was abandoned by another one
+				continue;
+			}
+			if (waitForEntry(entry) == TopicState.Active && matches(entry, name)) {
+				if (directory.getLong(entry + TopicStructure.FileSize) != fileSize
+						|| directory.getInt(entry + TopicStructure.RecordSize) != recordSize
+						|| directory.getInt(entry + TopicStructure.Flags) != flags) {
+					throw new IOException("The topic is already defined with a different layout: " + topic);
+				}
+				return;
+			}
+		}
+		throw new IOException("All " + TopicLength.MaxTopics + " topic entries are in use: " + directoryName);
+	}
+
+	/**
+	 * Creates a writer for a topic, set up with the layout of the topic.
+	 *
+	 * The writer is not opened, so any other settings can be made before it's opened.
+	 *
+	 * @param topic the name of the topic
+	 * @return the writer
+	 * @throws IOException if the topic is not defined
+	 */
+	public MappedBusWriter createWriter(String topic) throws IOException {
+		long entry = find(topic);
+		int flags = directory.getInt(entry + TopicStructure.Flags);
+		MappedBusWriter writer = new MappedBusWriter(fileName(topic), directory.getLong(entry + TopicStructure.FileSize), directory.getInt(entry + TopicStructure.RecordSize));
+		writer.setSegmented((flags & TopicFlag.Segmented) != 0);
+		writer.setVariableLength((flags & TopicFlag.VariableLength) != 0);
+		writer.setTimestamped((flags & TopicFlag.Timestamped) != 0);
+		writer.setPadded((flags & TopicFlag.Padded) != 0);
+		writer.setAligned((flags & TopicFlag.Aligned) != 0);
+		writer.share(this);
+		return writer;
+	}
+
+	/**
+	 * Creates a reader for a topic, set up with the layout of the topic.
+	 *
+	 * The reader is not opened, so any other settings can be made before it's opened.
+	 *
+	 * @param topic the name of the topic
+	 * @return the reader
+	 * @throws IOException if the topic is not defined
+	 */
+	public MappedBusReader createReader(String topic) throws IOException {
+		long entry = find(topic);
+		int flags = directory.getInt(entry + TopicStructure.Flags);
+		MappedBusReader reader = new MappedBusReader(fileName(topic), directory.getLong(entry + TopicStructure.FileSize), directory.getInt(entry + TopicStructure.RecordSize));
+		reader.setSegmented((flags & TopicFlag.Segmented) != 0);
+		reader.setVariableLength((flags & TopicFlag.VariableLength) != 0);
+		reader.setTimestamped((flags & TopicFlag.Timestamped) != 0);
+		reader.setPadded((flags & TopicFlag.Padded) != 0);
+		reader.setAligned((flags & TopicFlag.Aligned) != 0);
+		reader.setCoordinated((flags & TopicFlag.Coordinated) != 0);
+		reader.share(this);
+		return reader;
+	}
+
+	private long find(String topic) throws IOException {
+		byte[] name = name(topic);
+		for (int i = 0; i < TopicLength.MaxTopics; i++) {
+			long entry = (long)i * TopicLength.Topic;
+			if (directory.getIntVolatile(entry + TopicStructure.State) == TopicState.Free) {
+				break;
+			}
+			if (waitForEntry(entry) == TopicState.Active && matches(entry, name)) {
+				return entry;
+			}
+		}
+		throw new IOException("The topic is not defined: " + topic);
+	}
+
+	/**
+	 * Waits for an entry being written to be completed, or abandons it if it's not completed in time.
+	 *
+	 * @return the state of the entry
+	 */
+	private int waitForEntry(long entry) {
+		long start = System.currentTimeMillis();
+		int state;
+		while ((state = directory.getIntVolatile(entry + TopicStructure.State)) == TopicState.Claimed) {
+			if (System.currentTimeMillis() - start > CLAIM_TIMEOUT) {
+				// the process which claimed the entry most likely crashed before completing it
+				directory.compareAndSwapInt(entry + TopicStructure.State, TopicState.Claimed, TopicState.Abandoned);
+			}
+			Thread.yield();
+		}
+		return state;
+	}
+
+	private boolean matches(long entry, byte[] name) {
+		int length = directory.getInt(entry + TopicStructure.NameLength);
+		if (length != name.length) {
+			return false;
+		}
+		byte[] existing = new byte[length];
+		directory.getBytes(entry + TopicStructure.Name, existing, 0, length);
+		return Arrays.equals(name, existing);
+	}
+
+	private static byte[] name(String topic) {
+		if (topic.isEmpty() || topic.length() > TopicLength.Name) {
+			throw new IllegalArgumentException("The topic name must be 1 to " + TopicLength.Name + " characters: " + topic);
+		}
+		for (int i = 0; i < topic.length(); i++) {
+			char c = topic.charAt(i);
+			if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '_' && c != '-') {
+				throw new IllegalArgumentException("Invalid character in the topic name: " + topic);
+			}
+		}
+		return topic.getBytes(UTF8);
+	}
+
+	private String fileName(String topic) {
+		return new File(baseDir, topic).getPath();
+	}
+
+	static synchronized MemoryMappedFile map(String name, long size) throws Exception {
+		String path = new File(name).getCanonicalPath();
+		Mapping mapping = mappings.get(path);
+		if (mapping == null) {
+			mapping = new Mapping(path, new MemoryMappedFile(name, size));
+			mappings.put(path, mapping);
+			mappingsByFile.put(mapping.mem, mapping);
+		}
+		mapping.references++;
+		return mapping.mem;
+	}
+
+	static synchronized void unmap(MemoryMappedFile mem) throws Exception {
+		Mapping mapping = mappingsByFile.get(mem);
+		if (mapping == null) {
+			return;
+		}
+		if (--mapping.references == 0) {
+			mappings.remove(mapping.name);
+			mappingsByFile.remove(mem);
+			mem.unmap();
+		}
+	}
+
+	/**
+	 * Returns the number of files currently mapped by the managers of this JVM and their writers and readers.
+	 *
+	 * @return the number of mapped files
+	 */
+	public static synchronized int mappedFiles() {
+		return mappings.size();
+	}
+
+	/**
+	 * Closes the manager.
+	 *
+	 * The writers and readers created by the manager keep their mappings until they are closed.
+	 *
+	 * @throws IOException if there was an error closing the file
+	 */
+	public void close() throws IOException {
+		try {
+			unmap(directory);
+		} catch(Exception e) {
+			throw new IOException("Unable to close the file", e);
+		}
+	}
+
+	private static class Mapping {
+
+		private final String name;
+
+		private final MemoryMappedFile mem;
+
+		private int references;
+
+		Mapping(String name, MemoryMappedFile mem) {
+			this.name = name;
+			this.mem = mem;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import io.mappedbus.MappedBusConstants.MetricsFlag;
+import io.mappedbus.MappedBusConstants.MetricsLength;
+import io.mappedbus.MappedBusConstants.MetricsStructure;
+import io.mappedbus.MappedBusConstants.ReaderState;
+
+import java.io.IOException;
+
+/**
+ * Class for the counters of one writer or reader in the metrics file of a bus.
+ * <p>
+ * Each writer and reader claims a slot of its own in the file, so the counters are only updated by one
+ * thread and are incremented with an ordered store instead of an atomic instruction. A slot is released
+ * when its owner is closed, and is taken over by the next writer or reader with its counters left as they
+ * are, so the sums of the counters only grow. A reader also publishes its position for the monitor to
+ * compute its lag.
+ *
+ */
+class MappedBusMetrics {
+
+	private final MemoryMappedFile mem;
+
+	private final long slot;
+
+	private long position = -1;
+
+	private MappedBusMetrics(MemoryMappedFile mem, long slot) {
+		this.mem = mem;
+		this.slot = slot;
+	}
+
+	/**
+	 * Opens the metrics file of a bus and claims a slot.
+	 *
+	 * @param fileName the name of the bus
+	 * @param type the type of the owner of the slot, see {@link MappedBusConstants.MetricsType}
+	 * @param fileSize the size of the bus file (or of each segment)
+	 * @param entrySize the size of a record for fixed size records, or 0 for variable length records
+	 * @param segmented true, if the bus is segmented
+	 * @return the metrics of the slot
+	 * @throws IOException if there was a problem opening the file, or all slots are in use
+	 */
+	static MappedBusMetrics open(String fileName, int type, long fileSize, int entrySize, boolean segmented) throws IOException {
+		String name = MappedBusFiles.metrics(fileName);
+		MemoryMappedFile mem;
+		try {
+			mem = new MemoryMappedFile(name, MetricsLength.Metrics);
+		} catch(Exception e) {
+			throw new IOException("Unable to open the file: " + name, e);
+		}
+		mem.putInt(MetricsStructure.EntrySize, entrySize);
+		mem.putInt(MetricsStructure.Flags, segmented ? MetricsFlag.Segmented : 0);
+		mem.putLongVolatile(MetricsStructure.FileSize, fileSize);
+		for (int i = 0; i < MetricsLength.MaxSlots; i++) {
+			long slot = slot(i);
+			if (mem.compareAndSwapInt(slot + MetricsStructure.State, ReaderState.Free, ReaderState.Claimed)) {
+				mem.putLong(slot + MetricsStructure.Position, 0);
+				mem.putInt(slot + MetricsStructure.Type, type);
+				mem.putIntVolatile(slot + MetricsStructure.State, ReaderState.Active);
+				return new MappedBusMetrics(mem, slot);
+			}
+		}
+		try {
+			mem.unmap();
+		} catch(Exception e) {
+			// the file is no longer used, so a failure to unmap it only leaks the mapping
+		}
+		throw new IOException("All " + MetricsLength.MaxSlots + " metrics slots are in use: " + name);
+	}
+
+	static long slot(int i) {
+		return MetricsStructure.Slots + (long)i * MetricsLength.Slot;
+	}
+
+	static long counter(long slot, int counter) {
+		return slot + MetricsStructure.Counters + counter * MetricsLength.Counter;
+	}
+
+	void increment(int counter) {
+		add(counter, 1);
+	}
+
+	void add(int counter, long delta) {
+		long pos = counter(slot, counter);
+		mem.putLongOrdered(pos, mem.getLong(pos) + delta);
+	}
+
+	/**
+	 * Publishes the position of a reader, as the number of bytes from the start of the first segment.
+	 */
+	void position(long position) {
+		if (position != this.position) {
+			mem.putLongOrdered(slot + MetricsStructure.Position, position);
+			this.position = position;
+		}
+	}
+
+	void close() throws Exception {
+		mem.putIntVolatile(slot + MetricsStructure.State, ReaderState.Free);
+		mem.unmap();
+	}
+}
@@ -0,0 +1,240 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import io.mappedbus.MappedBusConstants.MetricsCounter;
+import io.mappedbus.MappedBusConstants.MetricsFlag;
+import io.mappedbus.MappedBusConstants.MetricsLength;
+import io.mappedbus.MappedBusConstants.MetricsStructure;
+import io.mappedbus.MappedBusConstants.MetricsType;
+import io.mappedbus.MappedBusConstants.ReaderState;
+import io.mappedbus.MappedBusConstants.Structure;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Class for sampling the metrics of a bus from outside the processes using it.
+ * <p>
+ * The writers and readers opened with metrics enabled update their counters in a file next to the bus
+ * ("/tmp/test.metrics"). The monitor only reads that file and the limit of the bus, so it doesn't slow
+ * down the writers and readers. The counters are the sums over all writers and readers which have used
+ * the bus, see {@link MetricsCounter}, and the lag of a reader is the number of bytes between its
+ * position and the limit of the bus.
+ * <p>
+ * The monitor can be run as a tool printing the rates of the counters and the largest reader lag:
+ * <pre>
+ * java -cp mappedbus.jar io.mappedbus.MappedBusMonitor /tmp/test [interval in ms]
+ * </pre>
+ */
+public class MappedBusMonitor {
+
+	private static final String[] NAMES = {"written", "committed", "failed", "aborted", "read", "skipped", "timedout", "eof", "dead"};
+
+	private final String fileName;
+
+	private MemoryMappedFile mem;
+
+	private MemoryMappedFile bus;
+
+	private long busSegment = -1;
+
+	/**
+	 * Constructs a new monitor.
+	 *
+	 * @param fileName the name of the bus
+	 */
+	public MappedBusMonitor(String fileName) {
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Opens the monitor.
+	 *
+	 * @throws IOException if the bus has no metrics file, or there was a problem opening it
+	 */
+	public void open() throws IOException {
+		String name = MappedBusFiles.metrics(fileName);
+		if (!new File(name).exists()) {
+			throw new IOException("The bus has no metrics file: " + name);
+		}
+		try {
+			mem = new MemoryMappedFile(name, MetricsLength.Metrics);
+		} catch(Exception e) {
+			throw new IOException("Unable to open the file: " + name, e);
+		}
+	}
+
+	/**
+	 * Returns the sum of a counter over all writers and readers.
+	 *
+	 * @param counter the counter, see {@link MetricsCounter}
+	 * @return the value of the counter
+	 */
+	public long get(int counter) {
+		if (counter < 0 || counter >= MetricsCounter.Count) {
+			throw new IllegalArgumentException("Invalid counter: " + counter);
+		}
+		long sum = 0;
+		for (int i = 0; i < MetricsLength.MaxSlots; i++) {
+			sum += mem.getLongVolatile(MappedBusMetrics.counter(MappedBusMetrics.slot(i), counter));
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the number of open writers or readers.
+	 *
+	 * @param type the type, see {@link MappedBusConstants.MetricsType}
+	 * @return the number of open writers or readers of the type
+	 */
+	public int count(int type) {
+		int count = 0;
+		for (int i = 0; i < MetricsLength.MaxSlots; i++) {
+			if (isActive(MappedBusMetrics.slot(i), type)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the position of the limit of the bus, as the number of bytes from the start of the first segment.
+	 *
+	 * @return the position of the limit, or 0 if the bus file doesn't exist
+	 * @throws IOException if there was a problem opening the bus file
+	 */
+	public long head() throws IOException {
+		long fileSize = mem.getLongVolatile(MetricsStructure.FileSize);
+		long segment = 0;
+		String name = fileName;
+		if ((mem.getInt(MetricsStructure.Flags) & MetricsFlag.Segmented) != 0) {
+			segment = MappedBusFiles.segments(fileName)[1];
+			name = MappedBusFiles.segment(fileName, segment);
+		}
+		if (segment < 0 || !new File(name).exists()) {
+			return 0;
+		}
+		if (segment != busSegment) {
+			closeBus();
+			try {
+				bus = new MemoryMappedFile(name, fileSize);
+			} catch(Exception e) {
+				throw new IOException("Unable to open the file: " + name, e);
+			}
+			busSegment = segment;
+		}
+		return segment * fileSize + Math.min(bus.getLongVolatile(Structure.Limit), fileSize);
+	}
+
+	/**
+	 * Returns the largest lag of the open readers.
+	 *
+	 * @return the number of bytes between the position of the reader furthest behind and the limit, or 0 if there are no readers
+	 * @throws IOException if there was a problem opening the bus file
+	 */
+	public long lag() throws IOException {
+		long head = head();
+		long lag = 0;
+		for (int i = 0; i < MetricsLength.MaxSlots; i++) {
+			long slot = MappedBusMetrics.slot(i);
+			if (isActive(slot, MetricsType.Reader)) {
+				long position = Math.max(mem.getLongVolatile(slot + MetricsStructure.Position), Structure.Data);
+				lag = Math.max(lag, head - position);
+			}
+		}
+		return lag;
+	}
+
+	/**
+	 * Returns the size of a record, used to turn a lag into a number of records.
+	 *
+	 * @return the size of a record including its header, or 0 for variable length records
+	 */
+	public int entrySize() {
+		return mem.getInt(MetricsStructure.EntrySize);
+	}
+
+	private boolean isActive(long slot, int type) {
+		return mem.getIntVolatile(slot + MetricsStructure.State) == ReaderState.Active
+				&& mem.getInt(slot + MetricsStructure.Type) == type;
+	}
+
+	/**
+	 * Closes the monitor.
+	 *
+	 * @throws IOException if there was an error closing the files
+	 */
+	public void close() throws IOException {
+		try {
+			closeBus();
+			mem.unmap();
+		} catch(Exception e) {
+			throw new IOException("Unable to close the file", e);
+		}
+	}
+
+	private void closeBus() throws IOException {
+		if (bus != null) {
+			try {
+				bus.unmap();
+			} catch(Exception e) {
+				throw new IOException("Unable to close the file", e);
+			}
+			bus = null;
+			busSegment = -1;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: MappedBusMonitor fileName [interval in ms]");
+			System.exit(1);
+		}
+		long interval = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		MappedBusMonitor monitor = new MappedBusMonitor(args[0]);
+		monitor.open();
+
+		long[] previous = new long[MetricsCounter.Count];
+		for (int i = 0; i < previous.length; i++) {
+			previous[i] = monitor.get(i);
+		}
+		long previousTime = System.nanoTime();
+		for (int line = 0; ; line++) {
+			Thread.sleep(interval);
+			if (line % 20 == 0) {
+				StringBuilder header = new StringBuilder();
+				for (String name : NAMES) {
+					header.append(String.format("%12s", name + "/s"));
+				}
+				header.append(String.format("%9s%9s%14s", "writers", "readers", "lag"));
+				System.out.println(header);
+			}
+			long time = System.nanoTime();
+			double seconds = (time - previousTime) / 1e9;
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < previous.length; i++) {
+				long value = monitor.get(i);
+				sb.append(String.format("%12d", (long)((value - previous[i]) / seconds)));
+				previous[i] = value;
+			}
+			previousTime = time;
+			long lag = monitor.lag();
+			int entrySize = monitor.entrySize();
+			sb.append(String.format("%9d%9d%14s", monitor.count(MetricsType.Writer), monitor.count(MetricsType.Reader),
+					entrySize > 0 ? (lag / entrySize) + " recs" : lag + " B"));
+			System.out.println(sb);
+		}
+	}
+}
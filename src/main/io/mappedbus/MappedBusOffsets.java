@@ -0,0 +1,125 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import io.mappedbus.MappedBusConstants.OffsetsLength;
+import io.mappedbus.MappedBusConstants.OffsetsStructure;
+import io.mappedbus.MappedBusConstants.ReaderState;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Class for the file storing the positions of the named subscriptions of a bus.
+ * <p>
+ * The file is a table of entries each holding the name of a subscription and the position of the next
+ * record to be read. An entry is claimed by setting its state, and the entries are always claimed in
+ * order, so two processes creating the same subscription at the same time end up with the same entry.
+ *
+ */
+class MappedBusOffsets {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final long CLAIM_TIMEOUT = 2000;
+
+	private final MemoryMappedFile mem;
+
+	private final long entry;
+
+	private MappedBusOffsets(MemoryMappedFile mem, long entry) {
+		this.mem = mem;
+		this.entry = entry;
+	}
+
+	/**
+	 * Opens the offsets file of a bus and finds the entry of a subscription, creating it if needed.
+	 *
+	 * @param fileName the name of the bus
+	 * @param name the name of the subscription
+	 * @return the offsets of the subscription
+	 * @throws IOException if there was a problem opening the file, or all entries are in use
+	 */
+	static MappedBusOffsets open(String fileName, String name) throws IOException {
+		byte[] bytes = name.getBytes(UTF8);
+		if (bytes.length == 0 || bytes.length > OffsetsLength.Name) {
+			throw new IllegalArgumentException("The subscription name must be 1 to " + OffsetsLength.Name + " bytes: " + name);
+		}
+		String offsetsName = MappedBusFiles.offsets(fileName);
+		MemoryMappedFile mem;
+		try {
+			mem = new MemoryMappedFile(offsetsName, OffsetsLength.Offsets);
+		} catch(Exception e) {
+			throw new IOException("Unable to open the file: " + offsetsName, e);
+		}
+		for (int i = 0; i < OffsetsLength.MaxSubscriptions; i++) {
+			long entry = (long)i * OffsetsLength.Subscription;
+			if (mem.compareAndSwapInt(entry + OffsetsStructure.State, ReaderState.Free, ReaderState.Claimed)) {
+				mem.putInt(entry + OffsetsStructure.NameLength, bytes.length);
+				mem.setBytes(entry + OffsetsStructure.Name, bytes, 0, bytes.length);
+				mem.putIntVolatile(entry + OffsetsStructure.State, ReaderState.Active);
+				return new MappedBusOffsets(mem, entry);
+			}
+			long start = System.currentTimeMillis();
+			while (mem.getIntVolatile(entry + OffsetsStructure.State) == ReaderState.Claimed) {
+				if (System.currentTimeMillis() - start > CLAIM_TIMEOUT) {
+					unmap(mem);
+					throw new IOException("The subscription entry " + i + " was never completed: " + offsetsName);
+				}
+				Thread.yield();
+			}
+			int length = mem.getInt(entry + OffsetsStructure.NameLength);
+			if (length == bytes.length) {
+				byte[] existing = new byte[length];
+				mem.getBytes(entry + OffsetsStructure.Name, existing, 0, length);
+				if (Arrays.equals(bytes, existing)) {
+					return new MappedBusOffsets(mem, entry);
+				}
+			}
+		}
+		unmap(mem);
+		throw new IOException("All " + OffsetsLength.MaxSubscriptions + " subscription entries are in use: " + offsetsName);
+	}
+
+	/**
+	 * Returns the stored position.
+	 *
+	 * @return the position of the next record to read, or 0 if no position has been stored
+	 */
+	long get() {
+		return mem.getLongVolatile(entry + OffsetsStructure.Position);
+	}
+
+	/**
+	 * Stores a position using an ordered store.
+	 *
+	 * @param position the position of the next record to read
+	 */
+	void put(long position) {
+		mem.putLongOrdered(entry + OffsetsStructure.Position, position);
+	}
+
+	void close() throws Exception {
+		mem.unmap();
+	}
+
+	private static void unmap(MemoryMappedFile mem) {
+		try {
+			mem.unmap();
+		} catch(Exception e) {
+			// the file is no longer used, so a failure to unmap it only leaks the mapping
+		}
+	}
+}
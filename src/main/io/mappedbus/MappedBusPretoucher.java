@@ -0,0 +1,107 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import io.mappedbus.MappedBusConstants.Structure;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class touching the pages ahead of the limit in a background thread, so the writer doesn't take the
+ * page faults when it first writes to a page.
+ * <p>
+ * The pages are touched in the mapping used by the writer, with a compare and swap which doesn't change
+ * the memory, so a record written at the same time is never overwritten. When the writer rolls over to
+ * a new segment it rebinds the pretoucher to the new mapping.
+ *
+ */
+final class MappedBusPretoucher implements Runnable {
+
+	static final int PAGE_SIZE = 4096;
+
+	private static final long IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final long fileSize;
+
+	private final long distance;
+
+	private final Thread thread;
+
+	private MemoryMappedFile mem;
+
+	private volatile long touched;
+
+	private volatile boolean running = true;
+
+	MappedBusPretoucher(MemoryMappedFile mem, long fileSize, long distance) {
+		this.mem = mem;
+		this.fileSize = fileSize;
+		this.distance = distance;
+		this.thread = new Thread(this, "mappedbus-pretoucher");
+		this.thread.setDaemon(true);
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	/**
+	 * Moves the pretoucher to a new mapping. The old mapping is not used once this method returns.
+	 */
+	synchronized void rebind(MemoryMappedFile mem) {
+		this.mem = mem;
+		this.touched = 0;
+	}
+
+	/**
+	 * Stops the pretoucher and waits for the thread to finish.
+	 */
+	void stop() {
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the position up to which the pages of the current mapping have been touched.
+	 */
+	long touched() {
+		return touched;
+	}
+
+	public void run() {
+		while (running) {
+			if (!touchNextPage()) {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+
+	private synchronized boolean touchNextPage() {
+		long limit = mem.getLongVolatile(Structure.Limit);
+		long target = Math.min(limit + distance, fileSize);
+		long pos = Math.max(touched, limit & ~(PAGE_SIZE - 1));
+		if (pos >= target) {
+			return false;
+		}
+		mem.compareAndSwapInt(pos, 0, 0);
+		touched = pos + PAGE_SIZE;
+		return true;
+	}
+}
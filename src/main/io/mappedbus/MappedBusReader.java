@@ -13,11 +13,17 @@
  */
 package io.mappedbus;
 
+import io.mappedbus.MappedBusConstants.MetricsCounter;
+import io.mappedbus.MappedBusConstants.MetricsType;
+import io.mappedbus.MappedBusConstants.PaddedStructure;
 import io.mappedbus.MappedBusConstants.StatusFlag;
 import io.mappedbus.MappedBusConstants.Length;
 import io.mappedbus.MappedBusConstants.Structure;
 
+import static io.mappedbus.MappedBusEvents.EVENTS;
+
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -49,10 +55,69 @@ import java.io.IOException;
  *    }
  * }
  *
+ * // C: read records in place, without copying the data
+ * while (true) {
+ *    if (reader.next()) {
+ *       MappedBusRecord record = reader.readRecord();
+ *       long price = record.getLong(8);
+ *    }
+ * }
+ *
+ * // D: wait for records without spinning
+ * reader.setWaitStrategy(new MappedBusWaitStrategy.Park(1, 1000));
+ * while (true) {
+ *    reader.take();
+ *    reader.readMessage(priceUpdate);
+ * }
+ *
+ * // E: hand the available records to a handler
+ * while (true) {
+ *    reader.poll(handler, 100);
+ * }
+ *
  * // Close the reader
  * reader.close();
  * }
  * </pre>
+ * <p>
+ * In segmented mode the reader starts at the oldest segment file found on disk and follows the writers
+ * into the next segment when the current one has been read to the end.
+ * <p>
+ * In variable length mode the reader uses the length stored in the header of each record to step to
+ * the next record. In aligned mode, which must match the writers, each fixed size record takes up a
+ * multiple of eight bytes.
+ * <p>
+ * A reader with a named subscription stores the position of the next record to read in a file next to
+ * the bus ("/tmp/test.offsets"), and a reader opened later with the same subscription name resumes from
+ * that position instead of reading the bus from the start. A record counts as consumed when the reader
+ * steps to the next record, or when the handler given to poll() returns, so a record being processed
+ * when the process stops is delivered again (at-least-once).
+ * <p>
+ * When the writers store a timestamp in each record the reader can seek to the first record written at
+ * or after a given time. The search assumes the timestamps grow with the position of the records, so
+ * records written by concurrent writers at nearly the same time may be found slightly out of order.
+ * <p>
+ * With metrics enabled the reader counts the records it reads, skips and rolls back in a file next to
+ * the bus ("/tmp/test.metrics"), and publishes its position there, for {@link MappedBusMonitor} to read.
+ * <p>
+ * With liveness enabled the reader looks up the writer owning a record which isn't committed in the
+ * writer table of the bus ("/tmp/test.writers"), and rolls the record back as soon as the writer is
+ * known to have died, instead of waiting for the timeout. A record of a live writer, or of a writer
+ * without liveness enabled, is waited for until the timeout as before.
+ * <p>
+ * A coordinated reader never rolls back a record itself, and waits for each record to be committed or
+ * rolled back by a {@link MappedBusCoordinator}, which then has to be running for the bus.
+ * <p>
+ * In padded mode the reader polls the limit published by the writers as records are committed, which is
+ * on a cache line of its own, instead of the limit the writers claim records from.
+ * <p>
+ * In out of order mode the reader steps past a bounded number of records which aren't committed yet,
+ * and delivers the committed records after them, so a slow or preempted writer doesn't hold up the
+ * records of the other writers. The pending records are delivered, oldest first, once they're committed,
+ * or dropped once they're rolled back, and the timeout applies to each of them as it would in order. As
+ * a writer commits its records in the order it claimed them, the records of each writer are still read
+ * in the order they were written. The reader doesn't leave a segment before its pending records have
+ * been committed or rolled back, and waits in order when the list of pending records is full.
  */
 public class MappedBusReader {
 
@@ -74,11 +139,71 @@ public class MappedBusReader {
 
 	private int maxTimeout = 2000;
 
+	private MappedBusWaitStrategy waitStrategy = new MappedBusWaitStrategy.BusySpin();
+
 	protected long timerStart;
 
 	protected long timeoutCounter;
 
 	private boolean typeRead;
+
+	private boolean segmented;
+
+	private long segment;
+
+	private long initialSegment;
+
+	private boolean variableLength;
+
+	private boolean timestamped;
+
+	private boolean aligned;
+
+	private int dataOffset = Structure.Data;
+
+	private int publishedOffset = Structure.Limit;
+
+	private int metadataOffset = Length.StatusFlag;
+
+	private int timestampOffset;
+
+	private int entrySize;
+
+	private int minRecordLength;
+
+	private int recordLength;
+
+	private final MappedBusRecord record = new MappedBusRecord();
+
+	private String subscription;
+
+	private MappedBusOffsets offsets;
+
+	private long storedPosition;
+
+	private MappedBusManager manager;
+
+	private boolean metricsEnabled;
+
+	private MappedBusMetrics metrics;
+
+	private boolean livenessEnabled;
+
+	private MappedBusWriterTable writers;
+
+	private long livenessChecked;
+
+	private long heartbeatTimeout = MappedBusWriterTable.HEARTBEAT_TIMEOUT;
+
+	private boolean coordinated;
+
+	private long[] pending;
+
+	private long[] pendingSince;
+
+	private int pendingCount;
+
+	private long frontier;
 	
 	/**
 	 * Constructs a new reader.
@@ -91,6 +216,164 @@ public class MappedBusReader {
 		this.fileName = fileName;
 		this.fileSize = fileSize;
 		this.recordSize = recordSize;
+		this.entrySize = Length.RecordHeader + recordSize;
+		this.minRecordLength = entrySize;
+	}
+
+	/**
+	 * Sets whether the bus is made up of segment files which are rolled over when full.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param segmented true, if the bus is segmented, otherwise false
+	 */
+	public void setSegmented(boolean segmented) {
+		this.segmented = segmented;
+	}
+
+	/**
+	 * Sets whether the records take up only the space needed for their data instead of a fixed size.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param variableLength true, if the records have a variable length, otherwise false
+	 */
+	public void setVariableLength(boolean variableLength) {
+		this.variableLength = variableLength;
+		layout();
+	}
+
+	/**
+	 * Sets whether the writers store the time a record is written in its header.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param timestamped true, if the records are timestamped, otherwise false
+	 */
+	public void setTimestamped(boolean timestamped) {
+		this.timestamped = timestamped;
+		layout();
+	}
+
+	/**
+	 * Sets whether each fixed size record takes up a multiple of eight bytes, so its status flag can be
+	 * accessed atomically by the VarHandle memory backend whatever the record size. Timestamped records
+	 * are always aligned, so the timestamp is too. The writers and readers of a bus must agree on it.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param aligned true, if the records are aligned, otherwise false
+	 */
+	public void setAligned(boolean aligned) {
+		this.aligned = aligned;
+		layout();
+	}
+
+	private void layout() {
+		int headerLength = variableLength ? Length.StatusFlag + Length.RecordLength : Length.StatusFlag;
+		if (timestamped) {
+			timestampOffset = MappedBusWriter.align(headerLength);
+			headerLength = timestampOffset + Length.Timestamp;
+		}
+		metadataOffset = headerLength;
+		entrySize = headerLength + Length.Metadata + recordSize;
+		if (aligned || timestamped) {
+			entrySize = MappedBusWriter.align(entrySize);
+		}
+		minRecordLength = variableLength ? MappedBusWriter.align(Length.VariableRecordHeader) : entrySize;
+	}
+
+	/**
+	 * Sets whether the file has a padded header, with the limit claimed by the writers and the limit
+	 * published to the readers on separate cache lines.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param padded true, if the file has a padded header, otherwise false
+	 */
+	public void setPadded(boolean padded) {
+		this.dataOffset = padded ? PaddedStructure.Data : Structure.Data;
+		this.publishedOffset = padded ? PaddedStructure.Published : Structure.Limit;
+		this.limit = dataOffset;
+	}
+
+	/**
+	 * Sets the name of the subscription the reader stores its position under.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param subscription the name of the subscription, at most 48 bytes in UTF-8
+	 */
+	public void setSubscription(String subscription) {
+		this.subscription = subscription;
+	}
+
+	/**
+	 * Sets whether the reader updates the counters in the metrics file of the bus.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param metricsEnabled true, if the counters are updated, otherwise false
+	 */
+	public void setMetrics(boolean metricsEnabled) {
+		this.metricsEnabled = metricsEnabled;
+	}
+
+	/**
+	 * Sets whether the reader checks the writer table of the bus when a record isn't committed, and
+	 * rolls the record back right away if the writer owning it has died.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param livenessEnabled true, if the writer table is checked, otherwise false
+	 */
+	public void setLiveness(boolean livenessEnabled) {
+		this.livenessEnabled = livenessEnabled;
+	}
+
+	/**
+	 * Sets the time after which a writer whose heartbeat has stopped is considered dead, if its process is
+	 * gone too where /proc is available. Where it isn't, the timeout used is never shorter than the timeout
+	 * for a record to be committed, so a slow writer isn't taken for a dead one.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param heartbeatTimeout the heartbeat timeout in milliseconds
+	 */
+	public void setHeartbeatTimeout(int heartbeatTimeout) {
+		this.heartbeatTimeout = heartbeatTimeout;
+	}
+
+	/**
+	 * Sets whether the records which aren't committed are left for a {@link MappedBusCoordinator} to roll
+	 * back, instead of being rolled back by the reader after the timeout.
+	 *
+	 * This method must be called before the reader is opened.
+	 *
+	 * @param coordinated true, if the rollbacks are left to a coordinator, otherwise false
+	 */
+	public void setCoordinated(boolean coordinated) {
+		this.coordinated = coordinated;
+	}
+
+	/**
+	 * Sets how many records which aren't committed yet the reader may step past to deliver the committed
+	 * records after them.
+	 *
+	 * This method must be called before the reader is opened, and can't be combined with a subscription.
+	 *
+	 * @param maxPending the maximum number of pending records, or 0 to read the records in order
+	 */
+	public void setOutOfOrder(int maxPending) {
+		if (maxPending < 0) {
+			throw new IllegalArgumentException("Invalid number of pending records: " + maxPending);
+		}
+		this.pending = maxPending > 0 ? new long[maxPending] : null;
+		this.pendingSince = maxPending > 0 ? new long[maxPending] : null;
+	}
+
+	boolean isCoordinated() {
+		return coordinated;
 	}
 
 	/**
@@ -99,12 +382,50 @@ public class MappedBusReader {
 	 * @throws IOException if there was a problem opening the file
 	 */
 	public void open() throws IOException {
+		if (!variableLength && entrySize % Length.StatusFlag != 0 && MemoryBackend.requiresAlignment()) {
+			throw new IllegalStateException("The " + MemoryBackend.name() + " memory backend requires aligned records for a record size of " + recordSize + ", see setAligned()");
+		}
+		if (segmented) {
+			long[] segments = MappedBusFiles.segments(fileName);
+			segment = Math.max(0, segments[0]);
+			initialSegment = Math.max(0, segments[1]);
+		}
+		if (subscription != null) {
+			if (pending != null) {
+				throw new IllegalStateException("A subscription can't be used with out of order delivery");
+			}
+			offsets = MappedBusOffsets.open(fileName, subscription);
+			storedPosition = offsets.get();
+			if (storedPosition != 0 && storedPosition / fileSize >= segment) {
+				segment = storedPosition / fileSize;
+				limit = storedPosition % fileSize;
+			}
+		}
+		String name = currentFileName();
 		try {
-			mem = new MemoryMappedFile(fileName, fileSize);
+			mem = map(name);
 		} catch(Exception e) {
-			throw new IOException("Unable to open the file: " + fileName, e);
+			throw new IOException("Unable to open the file: " + name, e);
+		}
+		if (initialSegment == segment) {
+			initialLimit = mem.getLongVolatile(Structure.Limit);
+		} else {
+			String lastName = MappedBusFiles.segment(fileName, initialSegment);
+			try {
+				MemoryMappedFile last = map(lastName);
+				initialLimit = last.getLongVolatile(Structure.Limit);
+				unmap(last);
+			} catch(Exception e) {
+				throw new IOException("Unable to open the file: " + lastName, e);
+			}
+		}
+		if (metricsEnabled) {
+			metrics = MappedBusMetrics.open(fileName, MetricsType.Reader, fileSize, variableLength ? 0 : entrySize, segmented);
+			metrics.position(segment * fileSize + limit);
+		}
+		if (livenessEnabled) {
+			writers = MappedBusWriterTable.open(fileName);
 		}
-		initialLimit = mem.getLongVolatile(Structure.Limit);
 	}
 
 	/**
@@ -119,6 +440,30 @@ public class MappedBusReader {
 		this.maxTimeout = timeout;
 	}
 
+	/**
+	 * Sets what the reader does while take() waits for a new record.
+	 *
+	 * @param waitStrategy the wait strategy, by default the reader spins
+	 */
+	public void setWaitStrategy(MappedBusWaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * Waits until the next record is available, using the wait strategy while there's no new record.
+	 *
+	 * @throws EOFException in case the end of the file was reached
+	 */
+	public void take() throws EOFException {
+		int idleCount = 0;
+		while (!next()) {
+			waitStrategy.idle(idleCount);
+			if (idleCount < Integer.MAX_VALUE) {
+				idleCount++;
+			}
+		}
+	}
+
 	/**
 	 * Steps forward to the next record if there's one available.
 	 * 
@@ -129,35 +474,241 @@ public class MappedBusReader {
 	 * @throws EOFException in case the end of the file was reached
 	 */
 	public boolean next() throws EOFException {
-		if (limit >= fileSize) {
-			throw new EOFException("End of file was reached");
+		if (pending != null) {
+			return nextOutOfOrder();
 		}
-		if (prevLimit != 0 && limit - prevLimit < Length.RecordHeader + recordSize) {
-			limit = prevLimit + Length.RecordHeader + recordSize;
+		skipToNext();
+		if (offsets != null) {
+			storePosition(limit);
 		}
-		if (mem.getLongVolatile(Structure.Limit) <= limit) {
+		if (mem.getLongVolatile(publishedOffset) <= limit) {
 			return false;
 		}
+		return nextRecord();
+	}
+
+	/**
+	 * Hands the available records to a handler.
+	 *
+	 * The limit is read once, and the committed records up to it are handed to the handler until a
+	 * record which hasn't been committed yet is found, or the maximum number of records is reached.
+	 * Records which have timed out are rolled back in the same way as by next().
+	 *
+	 * @param handler the handler to call for each record
+	 * @param maxRecords the maximum number of records to hand to the handler
+	 * @return the number of records handed to the handler
+	 * @throws EOFException in case the end of the file was reached
+	 */
+	public int poll(MappedBusHandler handler, int maxRecords) throws EOFException {
+		int records = 0;
+		if (pending != null) {
+			while (records < maxRecords && nextOutOfOrder()) {
+				handler.onRecord(this);
+				records++;
+			}
+			return records;
+		}
+		long published = 0;
+		long publishedSegment = -1;
+		while (records < maxRecords) {
+			skipToNext();
+			if (publishedSegment != segment) {
+				published = mem.getLongVolatile(publishedOffset);
+				publishedSegment = segment;
+			}
+			if (published <= limit) {
+				break;
+			}
+			long pos = limit;
+			if (nextRecord()) {
+				handler.onRecord(this);
+				records++;
+				if (offsets != null) {
+					storePosition(prevLimit + recordLength);
+				}
+			} else if (limit == pos) {
+				break;
+			}
+		}
+		return records;
+	}
+
+	private boolean nextOutOfOrder() throws EOFException {
+		if (frontier != 0) {
+			// the last record delivered was a pending one, so the reader goes back to where it left off
+			limit = frontier;
+			prevLimit = 0;
+			frontier = 0;
+		} else {
+			// the frontier is saved when a pending record is delivered, so it must be at the start of a record
+			skipRecord();
+		}
+		if (pendingCount > 0) {
+			if (nextPending()) {
+				return true;
+			}
+			if (limit + minRecordLength > fileSize) {
+				return false;
+			}
+		}
+		return nextFrontier();
+	}
+
+	/**
+	 * Moves the records at the frontier which aren't committed to the pending list, and delivers the first
+	 * committed record found there, unless a pending record has been committed in the meantime. A writer
+	 * commits its records in order, so the pending ones are delivered first to keep the order of each writer.
+	 */
+	boolean nextFrontier() throws EOFException {
+		skipToNext();
+		long published = mem.getLongVolatile(publishedOffset);
+		while (published > limit && pendingCount < pending.length && mem.getIntVolatile(limit) == StatusFlag.NotSet) {
+			pending[pendingCount] = limit;
+			pendingSince[pendingCount] = System.currentTimeMillis();
+			pendingCount++;
+			limit += recordLength(limit);
+			timeoutCounter = 0;
+			timerStart = 0;
+			if (limit + minRecordLength > fileSize) {
+				return false;
+			}
+		}
+		if (published <= limit) {
+			return false;
+		}
+		if (pendingCount > 0 && mem.getIntVolatile(limit) == StatusFlag.Commit && nextPending()) {
+			return true;
+		}
+		return nextRecord();
+	}
+
+	/**
+	 * Delivers the oldest pending record which has been committed, drops the ones which have been rolled
+	 * back, and rolls back the ones which have timed out.
+	 */
+	boolean nextPending() {
+		long now = 0;
+		boolean checkLiveness = false;
+		for (int i = 0; i < pendingCount; i++) {
+			long pos = pending[i];
+			int statusFlag = mem.getIntVolatile(pos);
+			if (statusFlag == StatusFlag.Commit) {
+				removePending(i);
+				frontier = limit;
+				limit = pos;
+				prevLimit = pos;
+				recordLength = recordLength(pos);
+				if (metrics != null) {
+					metrics.increment(MetricsCounter.Read);
+				}
+				return true;
+			}
+			if (statusFlag == StatusFlag.Rollback) {
+				removePending(i--);
+				if (metrics != null) {
+					metrics.increment(MetricsCounter.Skipped);
+				}
+				continue;
+			}
+			if (coordinated) {
+				continue;
+			}
+			if (now == 0) {
+				now = System.currentTimeMillis();
+				checkLiveness = writers != null && now != livenessChecked;
+				if (checkLiveness) {
+					livenessChecked = now;
+				}
+			}
+			boolean timedOut = now - pendingSince[i] >= maxTimeout;
+			if ((timedOut || checkLiveness && writers.isOwnerDead(segment * fileSize + pos, heartbeatTimeout, maxTimeout))
+					&& mem.compareAndSwapInt(pos, StatusFlag.NotSet, StatusFlag.Rollback)) {
+				EVENTS.rollback(fileName, segment, pos, now - pendingSince[i], true);
+				removePending(i--);
+				if (metrics != null) {
+					metrics.increment(timedOut ? MetricsCounter.TimedOut : MetricsCounter.DeadWriter);
+				}
+			}
+		}
+		return false;
+	}
+
+	private void removePending(int i) {
+		pendingCount--;
+		System.arraycopy(pending, i + 1, pending, i, pendingCount - i);
+		System.arraycopy(pendingSince, i + 1, pendingSince, i, pendingCount - i);
+	}
+
+	/**
+	 * Moves the limit to the end of the last record delivered, in case it hasn't been read in full.
+	 */
+	private void skipRecord() {
+		if (prevLimit != 0 && limit - prevLimit < recordLength) {
+			limit = prevLimit + recordLength;
+		}
+	}
+
+	private void skipToNext() throws EOFException {
+		skipRecord();
+		if (limit + minRecordLength > fileSize) {
+			if (!segmented) {
+				if (metrics != null) {
+					metrics.increment(MetricsCounter.EndOfFile);
+				}
+				EVENTS.endOfFile(fileName, segment, limit, true);
+				throw new EOFException("End of file was reached");
+			}
+			nextSegment();
+		}
+		if (metrics != null) {
+			metrics.position(segment * fileSize + limit);
+		}
+	}
+
+	private void storePosition(long limit) {
+		long position = segment * fileSize + limit;
+		if (position != storedPosition) {
+			offsets.put(position);
+			storedPosition = position;
+		}
+	}
+
+	private boolean nextRecord() {
 		int statusFlag = mem.getIntVolatile(limit);
 		if (statusFlag == StatusFlag.Rollback) {
-			limit += Length.RecordHeader + recordSize;
+			limit += recordLength(limit);
 			prevLimit = 0;
 			timeoutCounter = 0;
 			timerStart = 0;
+			if (metrics != null) {
+				metrics.increment(MetricsCounter.Skipped);
+			}
 			return false;
 		}
 		if (statusFlag == StatusFlag.Commit) {
+			if (timerStart != 0) {
+				EVENTS.commitStall(fileName, segment, limit, System.currentTimeMillis() - timerStart);
+			}
 			timeoutCounter = 0;
 			timerStart = 0;
 			prevLimit = limit;
+			recordLength = recordLength(limit);
+			if (metrics != null) {
+				metrics.increment(MetricsCounter.Read);
+			}
 			return true;
 		}
+		if (coordinated) {
+			return false;
+		}
 		timeoutCounter++;
 		if (timeoutCounter >= MAX_TIMEOUT_COUNT) {
 			if (timerStart == 0) {
 				timerStart = System.currentTimeMillis();
 			} else {
-				if (System.currentTimeMillis() - timerStart >= maxTimeout) {
+				long now = System.currentTimeMillis();
+				boolean timedOut = now - timerStart >= maxTimeout;
+				if (timedOut || isOwnerDead(now)) {
 					if (!mem.compareAndSwapInt(limit, StatusFlag.NotSet, StatusFlag.Rollback)) {
 						// there are two cases this can happen
 						// 1) a slow writer eventually set the status flag to commit
@@ -165,10 +716,14 @@ public class MappedBusReader {
 						// in both cases return false, and the value of the status flag will be used in the next call to this method
 						return false;
 					}
-					limit += Length.RecordHeader + recordSize;
+					EVENTS.rollback(fileName, segment, limit, now - timerStart, true);
+					limit += recordLength(limit);
 					prevLimit = 0;
 					timeoutCounter = 0;
 					timerStart = 0;
+					if (metrics != null) {
+						metrics.increment(timedOut ? MetricsCounter.TimedOut : MetricsCounter.DeadWriter);
+					}
 					return false;
 				}
 			}
@@ -176,6 +731,266 @@ public class MappedBusReader {
 		return false;
 	}
 
+	/**
+	 * Checks the writer table at most once a millisecond while waiting for a record to be committed.
+	 */
+	private boolean isOwnerDead(long now) {
+		if (writers == null || now == livenessChecked) {
+			return false;
+		}
+		livenessChecked = now;
+		return writers.isOwnerDead(segment * fileSize + limit, heartbeatTimeout, maxTimeout);
+	}
+
+	private int recordLength(long pos) {
+		if (variableLength) {
+			return mem.getInt(pos + Length.StatusFlag);
+		}
+		return entrySize;
+	}
+
+	private void nextSegment() throws EOFException {
+		mapSegment(segment + 1);
+	}
+
+	private void mapSegment(long segment) throws EOFException {
+		String name = MappedBusFiles.segment(fileName, segment);
+		MemoryMappedFile next;
+		try {
+			next = map(name);
+		} catch(Exception e) {
+			EOFException eof = new EOFException("Unable to open the next segment: " + name);
+			eof.initCause(e);
+			throw eof;
+		}
+		try {
+			unmap(mem);
+		} catch(Exception e) {
+			// the old segment is no longer used, so a failure to unmap it only leaks the mapping
+		}
+		mem = next;
+		this.segment = segment;
+		limit = dataOffset;
+		prevLimit = 0;
+		pendingCount = 0;
+		frontier = 0;
+	}
+
+	/**
+	 * Moves the reader to a record given its sequence number, which is the number of records written
+	 * before it, including rolled back records.
+	 *
+	 * Seeking is only supported for fixed size records, where the position of a record is computed from
+	 * the sequence number. The reader can seek past the last record written within the last segment, and
+	 * then waits for the writers to get there.
+	 *
+	 * @param sequence the sequence number of the record to read next
+	 * @throws EOFException in case the sequence number is beyond the end of the file or the last segment, or the segment holding the record has been deleted
+	 */
+	public void seek(long sequence) throws EOFException {
+		if (variableLength) {
+			throw new IllegalStateException("Seeking by sequence number is only supported for fixed size records");
+		}
+		if (sequence < 0) {
+			throw new IllegalArgumentException("Invalid sequence number: " + sequence);
+		}
+		long recordsPerFile = (fileSize - dataOffset) / entrySize;
+		long seekSegment = sequence / recordsPerFile;
+		if (!segmented && seekSegment > 0) {
+			throw new EOFException("The sequence number " + sequence + " is beyond the end of the file");
+		}
+		if (seekSegment != segment) {
+			if (seekSegment > MappedBusFiles.segments(fileName)[1]) {
+				throw new EOFException("The sequence number " + sequence + " is beyond the last segment of the bus");
+			}
+			String name = MappedBusFiles.segment(fileName, seekSegment);
+			if (!new File(name).exists()) {
+				throw new EOFException("The segment has been deleted: " + name);
+			}
+			mapSegment(seekSegment);
+		}
+		moveTo(dataOffset + (sequence % recordsPerFile) * entrySize);
+	}
+
+	/**
+	 * Moves the reader to the end of the bus, so only the records written after this call are read.
+	 *
+	 * This method can be called right after the reader is opened to skip the records already written.
+	 *
+	 * @throws EOFException in case there was an error opening the last segment
+	 */
+	public void seekToTail() throws EOFException {
+		if (segmented) {
+			long last = MappedBusFiles.segments(fileName)[1];
+			if (last > segment) {
+				mapSegment(last);
+			}
+		}
+		moveTo(Math.max(dataOffset, mem.getLongVolatile(Structure.Limit)));
+	}
+
+	/**
+	 * Moves the reader to the first record written at or after a given time.
+	 *
+	 * The segment is found by comparing the timestamps of the first record of each segment. Within a
+	 * segment fixed size records are searched by their position, and variable length records are scanned
+	 * from the closest entry of the time index.
+	 *
+	 * @param time the time in milliseconds, as given by System.currentTimeMillis()
+	 * @throws EOFException in case there was an error opening a segment
+	 */
+	public void seekToTime(long time) throws EOFException {
+		if (!timestamped) {
+			throw new IllegalStateException("The records are not timestamped");
+		}
+		if (segmented) {
+			long[] segments = MappedBusFiles.segments(fileName);
+			long lo = Math.max(0, segments[0]);
+			long hi = Math.max(0, segments[1]);
+			// find the last segment starting before the time
+			while (lo < hi) {
+				long mid = (lo + hi + 1) >>> 1;
+				if (firstTimestamp(mid) < time) {
+					lo = mid;
+				} else {
+					hi = mid - 1;
+				}
+			}
+			if (lo != segment) {
+				mapSegment(lo);
+			}
+		}
+		moveTo(variableLength ? searchVariable(time) : searchFixed(time));
+	}
+
+	/**
+	 * Reads the time the current record was written.
+	 *
+	 * @return the time in milliseconds
+	 */
+	public long readTimestamp() {
+		if (!timestamped) {
+			throw new IllegalStateException("The records are not timestamped");
+		}
+		return mem.getLong(prevLimit + timestampOffset);
+	}
+
+	private long firstTimestamp(long segment) throws EOFException {
+		if (segment == this.segment) {
+			return firstTimestamp(mem);
+		}
+		String name = MappedBusFiles.segment(fileName, segment);
+		try {
+			MemoryMappedFile other = map(name);
+			long timestamp = firstTimestamp(other);
+			unmap(other);
+			return timestamp;
+		} catch(Exception e) {
+			EOFException eof = new EOFException("Unable to open the segment: " + name);
+			eof.initCause(e);
+			throw eof;
+		}
+	}
+
+	private long firstTimestamp(MemoryMappedFile mem) {
+		long end = Math.min(mem.getLongVolatile(Structure.Limit), fileSize);
+		long pos = dataOffset;
+		while (pos < end) {
+			int statusFlag = mem.getIntVolatile(pos);
+			if (statusFlag == StatusFlag.Commit) {
+				return mem.getLong(pos + timestampOffset);
+			}
+			int length = variableLength ? mem.getInt(pos + Length.StatusFlag) : entrySize;
+			if (statusFlag != StatusFlag.Rollback || length == 0) {
+				break;
+			}
+			pos += length;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	private long searchFixed(long time) {
+		long records = (Math.min(mem.getLongVolatile(Structure.Limit), fileSize) - dataOffset) / entrySize;
+		long lo = 0;
+		long hi = records;
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			// records which haven't been committed have no timestamp, so the next committed one is used
+			long probe = mid;
+			while (probe < hi && mem.getIntVolatile(dataOffset + probe * entrySize) != StatusFlag.Commit) {
+				probe++;
+			}
+			if (probe == hi) {
+				hi = mid;
+			} else if (mem.getLong(dataOffset + probe * entrySize + timestampOffset) < time) {
+				lo = probe + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return dataOffset + lo * entrySize;
+	}
+
+	private long searchVariable(long time) throws EOFException {
+		long pos;
+		String name = currentFileName();
+		try {
+			MappedBusIndex index = MappedBusIndex.open(name, fileSize);
+			pos = Math.max(dataOffset, index.find(time));
+			index.close();
+		} catch(Exception e) {
+			EOFException eof = new EOFException("Unable to open the index: " + name);
+			eof.initCause(e);
+			throw eof;
+		}
+		long end = Math.min(mem.getLongVolatile(Structure.Limit), fileSize);
+		while (pos < end) {
+			int statusFlag = mem.getIntVolatile(pos);
+			int length = mem.getInt(pos + Length.StatusFlag);
+			if (statusFlag == StatusFlag.NotSet || length == 0) {
+				break;
+			}
+			if (statusFlag == StatusFlag.Commit && mem.getLong(pos + timestampOffset) >= time) {
+				break;
+			}
+			pos += length;
+		}
+		return pos;
+	}
+
+	private void moveTo(long position) {
+		limit = position;
+		prevLimit = 0;
+		pendingCount = 0;
+		frontier = 0;
+		typeRead = false;
+		timeoutCounter = 0;
+		timerStart = 0;
+	}
+
+	private MemoryMappedFile map(String name) throws Exception {
+		return manager != null ? MappedBusManager.map(name, fileSize) : new MemoryMappedFile(name, fileSize);
+	}
+
+	private void unmap(MemoryMappedFile mem) throws Exception {
+		if (manager != null) {
+			MappedBusManager.unmap(mem);
+		} else {
+			mem.unmap();
+		}
+	}
+
+	/**
+	 * Shares the mappings of the files with the other writers and readers of a manager.
+	 */
+	void share(MappedBusManager manager) {
+		this.manager = manager;
+	}
+
+	private String currentFileName() {
+		return segmented ? MappedBusFiles.segment(fileName, segment) : fileName;
+	}
+
 	/**
 	 * Reads the message type.
 	 *
@@ -183,7 +998,7 @@ public class MappedBusReader {
 	 */
 	public int readType() {
 		typeRead = true;
-		limit += Length.StatusFlag;
+		limit += metadataOffset;
 		int type = mem.getInt(limit);
 		limit += Length.Metadata;
 		return type;
@@ -201,7 +1016,7 @@ public class MappedBusReader {
 		}
 		typeRead = false;
 		message.read(mem, limit);
-		limit += recordSize;
+		limit = prevLimit + recordLength;
 		return message;
 	}
 
@@ -213,21 +1028,39 @@ public class MappedBusReader {
 	 * @return the length of the record that was read
 	 */
 	public int readBuffer(byte[] dst, int offset) {
-		limit += Length.StatusFlag;
+		limit += metadataOffset;
 		int length = mem.getInt(limit);
 		limit += Length.Metadata;
 		mem.getBytes(limit, dst, offset, length);
-		limit += recordSize;
+		limit = prevLimit + recordLength;
 		return length;
 	}
 
+	/**
+	 * Reads the next record in place.
+	 *
+	 * The returned record is reused by the reader, and gives access to the data in the memory mapped file
+	 * until the next call to next() or poll().
+	 *
+	 * @return the record
+	 */
+	public MappedBusRecord readRecord() {
+		long pos = prevLimit + metadataOffset;
+		int type = mem.getInt(pos);
+		pos += Length.Metadata;
+		record.wrap(mem, pos, type, variableLength ? (int)(prevLimit + recordLength - pos) : recordSize);
+		typeRead = false;
+		limit = prevLimit + recordLength;
+		return record;
+	}
+
 	/**
 	 * Indicates whether all records available when the reader was created have been read.
 	 *
 	 * @return true, if all records available from the start was read, otherwise false
 	 */
 	public boolean hasRecovered() {
-		return limit >= initialLimit;
+		return segment > initialSegment || (segment == initialSegment && limit >= initialLimit);
 	}
 
 	/**
@@ -237,7 +1070,18 @@ public class MappedBusReader {
 	 */
 	public void close() throws IOException {
 		try {
-			mem.unmap();
+			if (offsets != null) {
+				offsets.close();
+			}
+			if (metrics != null) {
+				metrics.close();
+				metrics = null;
+			}
+			if (writers != null) {
+				writers.close();
+				writers = null;
+			}
+			unmap(mem);
 		} catch(Exception e) {
 			throw new IOException("Unable to close the file", e);
 		}
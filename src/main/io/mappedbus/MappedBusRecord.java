@@ -0,0 +1,146 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+/**
+ * Class giving direct access to the data of a record in the memory mapped file.
+ * <p>
+ * The same instance is reused for every record, and the fields are read and written straight from and to
+ * the memory mapped file without being copied. The offsets are relative to the start of the data of the
+ * record. A record given out by a reader should only be read, and a record claimed by a writer is filled
+ * in before it's committed.
+ *
+ */
+public class MappedBusRecord {
+
+	private MemoryMappedFile mem;
+
+	private long pos;
+
+	private int type;
+
+	private int capacity;
+
+	void wrap(MemoryMappedFile mem, long pos, int type, int capacity) {
+		this.mem = mem;
+		this.pos = pos;
+		this.type = type;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the meta data of the record, which is the message type for object based records and the
+	 * length of the data for byte array based records.
+	 *
+	 * @return the message type or the length of the data
+	 */
+	public int type() {
+		return type;
+	}
+
+	/**
+	 * Returns the number of bytes available for the data of the record.
+	 *
+	 * @return the capacity of the record
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Reads a byte from the record.
+	 * @param offset the offset in the record
+	 * @return the value read
+	 */
+	public byte getByte(int offset) {
+		return mem.getByte(pos + offset);
+	}
+
+	/**
+	 * Reads an int from the record.
+	 * @param offset the offset in the record
+	 * @return the value read
+	 */
+	public int getInt(int offset) {
+		return mem.getInt(pos + offset);
+	}
+
+	/**
+	 * Reads a long from the record.
+	 * @param offset the offset in the record
+	 * @return the value read
+	 */
+	public long getLong(int offset) {
+		return mem.getLong(pos + offset);
+	}
+
+	/**
+	 * Reads a buffer of data from the record.
+	 * @param offset the offset in the record
+	 * @param dst the input buffer
+	 * @param dstOffset the offset in the buffer of the first byte to read data into
+	 * @param length the length of the data
+	 */
+	public void getBytes(int offset, byte[] dst, int dstOffset, int length) {
+		mem.getBytes(pos + offset, dst, dstOffset, length);
+	}
+
+	/**
+	 * Writes a byte to the record.
+	 * @param offset the offset in the record
+	 * @param val the value to write
+	 */
+	public void putByte(int offset, byte val) {
+		mem.putByte(pos + offset, val);
+	}
+
+	/**
+	 * Writes an int to the record.
+	 * @param offset the offset in the record
+	 * @param val the value to write
+	 */
+	public void putInt(int offset, int val) {
+		mem.putInt(pos + offset, val);
+	}
+
+	/**
+	 * Writes a long to the record.
+	 * @param offset the offset in the record
+	 * @param val the value to write
+	 */
+	public void putLong(int offset, long val) {
+		mem.putLong(pos + offset, val);
+	}
+
+	/**
+	 * Writes a buffer of data to the record.
+	 * @param offset the offset in the record
+	 * @param src the output buffer
+	 * @param srcOffset the offset in the buffer of the first byte to write
+	 * @param length the length of the data
+	 */
+	public void putBytes(int offset, byte[] src, int srcOffset, int length) {
+		mem.setBytes(pos + offset, src, srcOffset, length);
+	}
+
+	/**
+	 * Reads a message from the record.
+	 * @param message the message object to populate
+	 * @return the message object
+	 */
+	public MappedBusMessage getMessage(MappedBusMessage message) {
+		message.read(mem, pos);
+		return message;
+	}
+}
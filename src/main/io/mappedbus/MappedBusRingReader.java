@@ -0,0 +1,300 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import io.mappedbus.MappedBusConstants.Length;
+import io.mappedbus.MappedBusConstants.ReaderState;
+import io.mappedbus.MappedBusConstants.RingLength;
+import io.mappedbus.MappedBusConstants.RingStructure;
+import io.mappedbus.MappedBusConstants.StatusFlag;
+
+import java.io.IOException;
+
+/**
+ * Class for reading messages from a bus stored as a ring buffer.
+ * <p>
+ * When opened the reader registers itself in the header of the file and starts reading from the records
+ * written after that point. The position of the reader is published to the writers so they don't
+ * overwrite records which haven't been read yet. A reader which has been dropped by a writer because it
+ * fell too far behind gets an exception from the next call to next().
+ * <p>
+ * The typical usage is as follows:
+ * <pre>
+ * {@code
+ * // Construct a reader
+ * MappedBusRingReader reader = new MappedBusRingReader("/tmp/test", 1024, 32);
+ * reader.open();
+ *
+ * while (true) {
+ *    if (reader.next()) {
+ *       int type = reader.readType();
+ *       if (type == 0) {
+ *          reader.readMessage(priceUpdate)
+ *       }
+ *    }
+ * }
+ *
+ * // Close the reader, which unregisters it from the ring
+ * reader.close();
+ * }
+ * </pre>
+ */
+public class MappedBusRingReader {
+
+	protected static final long MAX_TIMEOUT_COUNT = 100;
+
+	private final String fileName;
+
+	private final int slots;
+
+	private final int entrySize;
+
+	private final long fileSize;
+
+	private MemoryMappedFile mem;
+
+	private long entry;
+
+	private long sequence;
+
+	private boolean delivered;
+
+	private int maxTimeout = 2000;
+
+	private MappedBusWaitStrategy waitStrategy = new MappedBusWaitStrategy.BusySpin();
+
+	protected long timerStart;
+
+	protected long timeoutCounter;
+
+	/**
+	 * Constructs a new reader.
+	 *
+	 * @param fileName the name of the memory mapped file
+	 * @param slots the number of records in the ring (must be a power of two)
+	 * @param recordSize the maximum size of a record (excluding the stamp and meta data)
+	 */
+	public MappedBusRingReader(String fileName, int slots, int recordSize) {
+		if (slots <= 0 || (slots & (slots - 1)) != 0) {
+			throw new IllegalArgumentException("The number of slots must be a power of two: " + slots);
+		}
+		this.fileName = fileName;
+		this.slots = slots;
+		this.entrySize = MappedBusRingWriter.entrySize(recordSize);
+		this.fileSize = RingStructure.Data + (long)slots * entrySize;
+	}
+
+	/**
+	 * Opens the reader and registers it in the ring.
+	 *
+	 * @throws IOException if there was a problem opening the file, or all reader entries are in use
+	 */
+	public void open() throws IOException {
+		try {
+			mem = new MemoryMappedFile(fileName, fileSize);
+		} catch(Exception e) {
+			throw new IOException("Unable to open the file: " + fileName, e);
+		}
+		entry = -1;
+		for (int i = 0; i < RingLength.MaxReaders; i++) {
+			long candidate = RingStructure.Readers + i * RingLength.Reader;
+			if (mem.compareAndSwapInt(candidate, ReaderState.Free, ReaderState.Claimed)) {
+				entry = candidate;
+				break;
+			}
+		}
+		if (entry == -1) {
+			throw new IOException("All " + RingLength.MaxReaders + " reader entries are in use: " + fileName);
+		}
+		// the writers ignore the entry until it's active, so the cursor is published before the
+		// entry is activated, and then moved up to any records claimed in the meantime
+		mem.putLongVolatile(cursorPosition(), mem.getLongVolatile(RingStructure.Limit));
+		mem.putIntVolatile(entry, ReaderState.Active);
+		sequence = mem.getLongVolatile(RingStructure.Limit);
+		mem.putLongVolatile(cursorPosition(), sequence);
+	}
+
+	/**
+	 * Sets the time for a reader to wait for a record to be committed.
+	 *
+	 * When the timeout occurs the reader will mark the record as "rolled back" and
+	 * the record is ignored.
+	 *
+	 * @param timeout the timeout in milliseconds
+	 */
+	public void setTimeout(int timeout) {
+		this.maxTimeout = timeout;
+	}
+
+	/**
+	 * Sets what the reader does while take() waits for a new record.
+	 *
+	 * @param waitStrategy the wait strategy, by default the reader spins
+	 */
+	public void setWaitStrategy(MappedBusWaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * Waits until the next record is available, using the wait strategy while there's no new record.
+	 *
+	 * @throws IOException in case the reader was dropped by a writer
+	 */
+	public void take() throws IOException {
+		int idleCount = 0;
+		while (!next()) {
+			waitStrategy.idle(idleCount);
+			if (idleCount < Integer.MAX_VALUE) {
+				idleCount++;
+			}
+		}
+	}
+
+	/**
+	 * Steps forward to the next record if there's one available.
+	 *
+	 * The method has a timeout for how long it will wait for the commit field to be set. When the timeout is
+	 * reached it will set the roll back field and skip over the record.
+	 *
+	 * @return true, if there's a new record available, otherwise false
+	 * @throws IOException in case the reader was dropped by a writer
+	 */
+	public boolean next() throws IOException {
+		if (delivered) {
+			delivered = false;
+			advance();
+		}
+		if (mem.getIntVolatile(entry) != ReaderState.Active) {
+			throw new IOException("The reader was dropped by a writer");
+		}
+		if (mem.getLongVolatile(RingStructure.Limit) <= sequence) {
+			return false;
+		}
+		long stamp = mem.getLongVolatile(position(sequence));
+		if (stamp == ((sequence << 2) | StatusFlag.Commit)) {
+			timeoutCounter = 0;
+			timerStart = 0;
+			delivered = true;
+			return true;
+		}
+		if (stamp == ((sequence << 2) | StatusFlag.Rollback)) {
+			advance();
+			timeoutCounter = 0;
+			timerStart = 0;
+			return false;
+		}
+		if ((stamp >>> 2) > sequence) {
+			throw new IOException("The reader was overrun by a writer");
+		}
+		timeoutCounter++;
+		if (timeoutCounter >= MAX_TIMEOUT_COUNT) {
+			if (timerStart == 0) {
+				timerStart = System.currentTimeMillis();
+			} else {
+				if (System.currentTimeMillis() - timerStart >= maxTimeout) {
+					if (!mem.compareAndSwapLong(position(sequence), stamp, (sequence << 2) | StatusFlag.Rollback)) {
+						// either the writer committed the record or another reader rolled it back,
+						// the new value of the stamp will be used in the next call to this method
+						return false;
+					}
+					advance();
+					timeoutCounter = 0;
+					timerStart = 0;
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void advance() {
+		sequence++;
+		mem.putLongOrdered(cursorPosition(), sequence);
+	}
+
+	/**
+	 * Reads the message type.
+	 *
+	 * @return the message type
+	 */
+	public int readType() {
+		return mem.getInt(position(sequence) + RingLength.Stamp);
+	}
+
+	/**
+	 * Reads the next message.
+	 *
+	 * @param message the message object to populate
+	 * @return the message object
+	 * @throws IOException in case the record was overwritten by a writer while it was read
+	 */
+	public MappedBusMessage readMessage(MappedBusMessage message) throws IOException {
+		message.read(mem, position(sequence) + RingLength.RecordHeader);
+		checkStamp();
+		return message;
+	}
+
+	/**
+	 * Reads the next buffer of data.
+	 *
+	 * @param dst the input buffer
+	 * @param offset the offset in the buffer of the first byte to read data into
+	 * @return the length of the record that was read
+	 * @throws IOException in case the record was overwritten by a writer while it was read
+	 */
+	public int readBuffer(byte[] dst, int offset) throws IOException {
+		long pos = position(sequence) + RingLength.Stamp;
+		int length = mem.getInt(pos);
+		pos += Length.Metadata;
+		if (length >= 0 && length <= entrySize - RingLength.RecordHeader) {
+			mem.getBytes(pos, dst, offset, length);
+		}
+		checkStamp();
+		return length;
+	}
+
+	/**
+	 * Checks that the record wasn't overwritten while it was copied, which a writer dropping this reader
+	 * can do at any time.
+	 */
+	private void checkStamp() throws IOException {
+		mem.loadFence();
+		if (mem.getLongVolatile(position(sequence)) != ((sequence << 2) | StatusFlag.Commit)) {
+			throw new IOException("The record was overwritten by a writer while it was read");
+		}
+	}
+
+	private long cursorPosition() {
+		return entry + RingLength.ReaderState + RingLength.ReaderPadding;
+	}
+
+	private long position(long sequence) {
+		return RingStructure.Data + (sequence & (slots - 1)) * entrySize;
+	}
+
+	/**
+	 * Closes the reader and unregisters it from the ring.
+	 *
+	 * @throws IOException if there was an error closing the file
+	 */
+	public void close() throws IOException {
+		try {
+			mem.compareAndSwapInt(entry, ReaderState.Active, ReaderState.Free);
+			mem.compareAndSwapInt(entry, ReaderState.Dropped, ReaderState.Free);
+			mem.unmap();
+		} catch(Exception e) {
+			throw new IOException("Unable to close the file", e);
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+import io.mappedbus.MappedBusConstants.Length;
+import io.mappedbus.MappedBusConstants.ReaderState;
+import io.mappedbus.MappedBusConstants.RingLength;
+import io.mappedbus.MappedBusConstants.RingStructure;
+import io.mappedbus.MappedBusConstants.StatusFlag;
+
+import java.io.IOException;
+
+/**
+ * Class for writing messages to a bus stored as a ring buffer.
+ * <p>
+ * The records are stored in a fixed number of slots which are reused when the writers wrap around. The
+ * readers publish how far they have read, and a writer never overwrites a slot which hasn't been read by
+ * all readers. When the ring is full the writer acts according to its overflow policy: it either waits for
+ * the readers to catch up, fails the write, or drops the slowest reader. A writer which waits drops the
+ * slowest reader anyway if it hasn't moved for the reader timeout, so a reader which crashed without
+ * unregistering doesn't block the writers forever.
+ * <p>
+ * The typical usage is as follows:
+ * <pre>
+ * {@code
+ * // Construct a writer with 1024 slots
+ * MappedBusRingWriter writer = new MappedBusRingWriter("/tmp/test", 1024, 32);
+ * writer.setOverflowPolicy(MappedBusRingWriter.OverflowPolicy.Block);
+ * writer.open();
+ *
+ * // A: write an object based message
+ * writer.write(priceUpdate);
+ *
+ * // B: write a byte array based message
+ * writer.write(buffer, 0, buffer.length);
+ *
+ * // Close the writer
+ * writer.close();
+ * }
+ * </pre>
+ */
+public class MappedBusRingWriter {
+
+	/**
+	 * What a writer does when the slot it's about to write to hasn't been read by all readers.
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * Wait for the readers to catch up, using the wait strategy, and drop the slowest reader if it
+		 * hasn't moved for the reader timeout.
+		 */
+		Block,
+
+		/**
+		 * Don't write the record, the write method returns false.
+		 */
+		FailFast,
+
+		/**
+		 * Drop the slowest reader and overwrite the slot.
+		 */
+		DropSlowest
+	}
+
+	private MemoryMappedFile mem;
+
+	private final String fileName;
+
+	private final int slots;
+
+	private final int entrySize;
+
+	private final long fileSize;
+
+	private OverflowPolicy overflowPolicy = OverflowPolicy.Block;
+
+	private MappedBusWaitStrategy waitStrategy = new MappedBusWaitStrategy.Yield();
+
+	private int readerTimeout = 10000;
+
+	private long minCursor;
+
+	/**
+	 * Constructs a new writer.
+	 *
+	 * @param fileName the name of the memory mapped file
+	 * @param slots the number of records in the ring (must be a power of two)
+	 * @param recordSize the maximum size of a record (excluding the stamp and meta data)
+	 */
+	public MappedBusRingWriter(String fileName, int slots, int recordSize) {
+		if (slots <= 0 || (slots & (slots - 1)) != 0) {
+			throw new IllegalArgumentException("The number of slots must be a power of two: " + slots);
+		}
+		this.fileName = fileName;
+		this.slots = slots;
+		this.entrySize = entrySize(recordSize);
+		this.fileSize = RingStructure.Data + (long)slots * entrySize;
+	}
+
+	static int entrySize(int recordSize) {
+		return MappedBusWriter.align(RingLength.RecordHeader + recordSize);
+	}
+
+	/**
+	 * Sets what the writer does when the ring is full.
+	 *
+	 * @param overflowPolicy the overflow policy
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Sets what the writer does while it waits for the readers to catch up.
+	 *
+	 * @param waitStrategy the wait strategy, by default the writer yields
+	 */
+	public void setWaitStrategy(MappedBusWaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * Sets the time after which a writer waiting for the readers to catch up drops the slowest reader,
+	 * if it hasn't read any record in the meantime.
+	 *
+	 * @param readerTimeout the timeout in milliseconds
+	 */
+	public void setReaderTimeout(int readerTimeout) {
+		this.readerTimeout = readerTimeout;
+	}
+
+	/**
+	 * Opens the writer.
+	 *
+	 * @throws IOException if there was an error opening the file
+	 */
+	public void open() throws IOException {
+		try {
+			mem = new MemoryMappedFile(fileName, fileSize);
+		} catch(Exception e) {
+			throw new IOException("Unable to open the file: " + fileName, e);
+		}
+	}
+
+	/**
+	 * Writes a message.
+	 *
+	 * @param message the message object to write
+	 * @return returns true if the message could be written, or otherwise false
+	 */
+	public boolean write(MappedBusMessage message) {
+		long sequence = claim();
+		if (sequence < 0) {
+			return false;
+		}
+		long stamp = writeRecord(sequence, message);
+		return commit(sequence, stamp);
+	}
+
+	protected long writeRecord(long sequence, MappedBusMessage message) {
+		long pos = position(sequence);
+		long stamp = mark(sequence);
+		if (stamp != ((sequence << 2) | StatusFlag.NotSet)) {
+			return stamp;
+		}
+		pos += RingLength.Stamp;
+		mem.putInt(pos, message.type());
+		pos += Length.Metadata;
+		message.write(mem, pos);
+		return stamp;
+	}
+
+	/**
+	 * Writes a buffer of data.
+	 *
+	 * @param src the output buffer
+	 * @param offset the offset in the buffer of the first byte to write
+	 * @param length the length of the data
+	 * @return returns true if the message could be written, or otherwise false
+	 */
+	public boolean write(byte[] src, int offset, int length) {
+		long sequence = claim();
+		if (sequence < 0) {
+			return false;
+		}
+		long stamp = writeRecord(sequence, src, offset, length);
+		return commit(sequence, stamp);
+	}
+
+	protected long writeRecord(long sequence, byte[] src, int offset, int length) {
+		long pos = position(sequence);
+		long stamp = mark(sequence);
+		if (stamp != ((sequence << 2) | StatusFlag.NotSet)) {
+			return stamp;
+		}
+		pos += RingLength.Stamp;
+		mem.putInt(pos, length);
+		pos += Length.Metadata;
+		mem.setBytes(pos, src, offset, length);
+		return stamp;
+	}
+
+	/**
+	 * Claims the next sequence number.
+	 *
+	 * @return the sequence number, or -1 if the ring is full and the overflow policy is to fail fast
+	 */
+	protected long claim() {
+		int idleCount = 0;
+		long blockedCursor = -1;
+		long blockedSince = 0;
+		while (true) {
+			long sequence = mem.getLongVolatile(RingStructure.Limit);
+			if (sequence - minCursor >= slots) {
+				minCursor = minCursor(sequence);
+				if (sequence - minCursor >= slots) {
+					switch (overflowPolicy) {
+					case FailFast:
+						return -1;
+					case DropSlowest:
+						dropSlowest();
+						break;
+					default:
+						if (minCursor != blockedCursor) {
+							blockedCursor = minCursor;
+							blockedSince = System.currentTimeMillis();
+						} else if (System.currentTimeMillis() - blockedSince >= readerTimeout) {
+							// the slowest reader hasn't moved, it has most likely crashed
+							dropSlowest();
+						}
+						waitStrategy.idle(idleCount);
+						if (idleCount < Integer.MAX_VALUE) {
+							idleCount++;
+						}
+						break;
+					}
+					continue;
+				}
+			}
+			if (mem.compareAndSwapLong(RingStructure.Limit, sequence, sequence + 1)) {
+				return sequence;
+			}
+		}
+	}
+
+	/**
+	 * Stamps the slot with the new sequence number before the record is written, so a reader still reading
+	 * the previous record in the slot sees that it has been overwritten.
+	 *
+	 * @return the new stamp, or the rolled back stamp if a reader timed out before the slot was stamped
+	 */
+	private long mark(long sequence) {
+		long pos = position(sequence);
+		long stamp = mem.getLongVolatile(pos);
+		while (stamp != ((sequence << 2) | StatusFlag.Rollback)) {
+			if (mem.compareAndSwapLong(pos, stamp, (sequence << 2) | StatusFlag.NotSet)) {
+				return (sequence << 2) | StatusFlag.NotSet;
+			}
+			stamp = mem.getLongVolatile(pos);
+		}
+		return stamp;
+	}
+
+	protected boolean commit(long sequence, long stamp) {
+		if (stamp == ((sequence << 2) | StatusFlag.Rollback)) {
+			// a reader timed out and rolled back the record before it was written
+			return false;
+		}
+		return mem.compareAndSwapLong(position(sequence), stamp, (sequence << 2) | StatusFlag.Commit);
+	}
+
+	private long minCursor(long sequence) {
+		long min = sequence;
+		for (int i = 0; i < RingLength.MaxReaders; i++) {
+			long entry = RingStructure.Readers + i * RingLength.Reader;
+			if (mem.getIntVolatile(entry) == ReaderState.Active) {
+				long cursor = mem.getLongVolatile(entry + RingLength.ReaderState + RingLength.ReaderPadding);
+				if (cursor < min) {
+					min = cursor;
+				}
+			}
+		}
+		return min;
+	}
+
+	private void dropSlowest() {
+		long min = Long.MAX_VALUE;
+		long slowest = -1;
+		for (int i = 0; i < RingLength.MaxReaders; i++) {
+			long entry = RingStructure.Readers + i * RingLength.Reader;
+			if (mem.getIntVolatile(entry) == ReaderState.Active) {
+				long cursor = mem.getLongVolatile(entry + RingLength.ReaderState + RingLength.ReaderPadding);
+				if (cursor < min) {
+					min = cursor;
+					slowest = entry;
+				}
+			}
+		}
+		if (slowest != -1) {
+			mem.compareAndSwapInt(slowest, ReaderState.Active, ReaderState.Dropped);
+		}
+	}
+
+	private long position(long sequence) {
+		return RingStructure.Data + (sequence & (slots - 1)) * entrySize;
+	}
+
+	/**
+	 * Closes the writer.
+	 *
+	 * @throws IOException if there was an error closing the file
+	 */
+	public void close() throws IOException {
+		try {
+			mem.unmap();
+		} catch(Exception e) {
+			throw new IOException("Unable to close the file", e);
+		}
+	}
+}
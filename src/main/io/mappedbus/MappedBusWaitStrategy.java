@@ -0,0 +1,144 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Interface for deciding what a reader does while it waits for a new record, or what a ring writer does
+ * while it waits for the readers to catch up.
+ * <p>
+ * The strategies don't keep any state, so the same instance can be shared by any number of readers and
+ * writers.
+ *
+ */
+public interface MappedBusWaitStrategy {
+
+	/**
+	 * Called each time a reader found no new record, or a ring writer found no free slot.
+	 *
+	 * @param idleCount the number of times in a row the call was made, starting at zero
+	 */
+	public void idle(int idleCount);
+
+	/**
+	 * Spins on the CPU, which gives the lowest latency but uses up a full core.
+	 */
+	public static class BusySpin implements MappedBusWaitStrategy {
+
+		private static final MethodHandle ON_SPIN_WAIT = onSpinWait();
+
+		private static MethodHandle onSpinWait() {
+			try {
+				return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+			} catch(Exception e) {
+				// the hint is only available from Java 9
+				return null;
+			}
+		}
+
+		public void idle(int idleCount) {
+			if (ON_SPIN_WAIT != null) {
+				try {
+					ON_SPIN_WAIT.invokeExact();
+				} catch(Throwable t) {
+					// the method doesn't throw
+				}
+			}
+		}
+	}
+
+	/**
+	 * Yields the CPU to other threads.
+	 */
+	public static class Yield implements MappedBusWaitStrategy {
+
+		public void idle(int idleCount) {
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Spins for a number of times, then yields for a number of times, and then parks for a fixed time.
+	 */
+	public static class Backoff implements MappedBusWaitStrategy {
+
+		private final BusySpin spin = new BusySpin();
+
+		private final int spins;
+
+		private final int yields;
+
+		private final long parkNanos;
+
+		/**
+		 * Constructs a new backoff strategy.
+		 *
+		 * @param spins the number of times to spin
+		 * @param yields the number of times to yield after spinning
+		 * @param parkTime the time to park after yielding, in microseconds
+		 */
+		public Backoff(int spins, int yields, long parkTime) {
+			this.spins = spins;
+			this.yields = yields;
+			this.parkNanos = TimeUnit.MICROSECONDS.toNanos(parkTime);
+		}
+
+		public void idle(int idleCount) {
+			if (idleCount < spins) {
+				spin.idle(idleCount);
+			} else if (idleCount - spins < yields) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(parkNanos);
+			}
+		}
+	}
+
+	/**
+	 * Parks the thread, doubling the time parked each time no record is found up to a maximum time.
+	 */
+	public static class Park implements MappedBusWaitStrategy {
+
+		private final long minParkNanos;
+
+		private final long maxParkNanos;
+
+		/**
+		 * Constructs a new park strategy.
+		 *
+		 * @param minParkTime the time to park the first time, in microseconds
+		 * @param maxParkTime the maximum time to park, in microseconds
+		 */
+		public Park(long minParkTime, long maxParkTime) {
+			if (minParkTime <= 0 || maxParkTime < minParkTime) {
+				throw new IllegalArgumentException("Invalid park times: " + minParkTime + ", " + maxParkTime);
+			}
+			this.minParkNanos = TimeUnit.MICROSECONDS.toNanos(minParkTime);
+			this.maxParkNanos = TimeUnit.MICROSECONDS.toNanos(maxParkTime);
+		}
+
+		public void idle(int idleCount) {
+			long nanos = maxParkNanos;
+			if (idleCount < Long.numberOfLeadingZeros(minParkNanos) - 1) {
+				nanos = Math.min(maxParkNanos, minParkNanos << idleCount);
+			}
+			LockSupport.parkNanos(nanos);
+		}
+	}
+}
@@ -12,10 +12,15 @@
 * limitations under the License. 
 */
 package io.mappedbus;
+import io.mappedbus.MappedBusConstants.MetricsCounter;
+import io.mappedbus.MappedBusConstants.MetricsType;
+import io.mappedbus.MappedBusConstants.PaddedStructure;
 import io.mappedbus.MappedBusConstants.StatusFlag;
 import io.mappedbus.MappedBusConstants.Length;
 import io.mappedbus.MappedBusConstants.Structure;
 
+import static io.mappedbus.MappedBusEvents.EVENTS;
+
 import java.io.EOFException;
 import java.io.IOException;
 
@@ -45,6 +50,62 @@ import java.io.IOException;
  * writer.close();
  * }
  * </pre>
+ * <p>
+ * In segmented mode the writer rolls over to a new segment file, named after the bus with the segment
+ * number appended ("/tmp/test.0", "/tmp/test.1", ...), when the current segment is full. The file size
+ * is then the size of each segment.
+ * <p>
+ * In aligned mode a fixed size record takes up its header and the record size rounded up to a multiple
+ * of eight bytes, so each record starts at a multiple of eight bytes, as needed by the VarHandle memory
+ * backend when the record size isn't a multiple of four.
+ * <p>
+ * In variable length mode each record only takes up the space needed for its data, rounded up to a
+ * multiple of eight bytes, and the record size is the maximum size of a record. The length of a record
+ * is stored in its header before the record is made visible to the readers, so a record can be skipped
+ * even if the writer crashes before committing it.
+ * <p>
+ * A number of fixed size records can be claimed with a single update of the limit, filled in, and then
+ * committed together:
+ * <pre>
+ * {@code
+ * long first = writer.claim(3);
+ * writer.writeRecord(first, 0, priceUpdate1);
+ * writer.writeRecord(first, 1, priceUpdate2);
+ * writer.writeRecord(first, 2, priceUpdate3);
+ * int committed = writer.commit(first, 3);
+ * }
+ * </pre>
+ * Each record in a batch is committed on its own, so a reader may still roll back a single record of a
+ * batch which takes too long to commit.
+ * <p>
+ * A record can also be claimed and encoded in place, without first writing the data to a buffer:
+ * <pre>
+ * {@code
+ * MappedBusRecord record = writer.tryClaim(16);
+ * record.putLong(0, time);
+ * record.putLong(8, price);
+ * writer.commit();
+ * }
+ * </pre>
+ * The length of the claimed data is stored as the meta data of the record, in the same way as for byte
+ * array based messages.
+ * <p>
+ * In timestamped mode the writer stores the time in milliseconds in the header of each record, eight
+ * bytes from its start, and the records are aligned so the value is too. This lets the readers seek to
+ * a point in time. With variable length records the writer also keeps a sparse index of the timestamps
+ * next to the bus file ("/tmp/test.index").
+ * <p>
+ * With metrics enabled the writer counts the records it writes, commits and aborts in a file next to the
+ * bus ("/tmp/test.metrics"), which is read by {@link MappedBusMonitor}.
+ * <p>
+ * With liveness enabled the writer registers in the writer table of the bus ("/tmp/test.writers"),
+ * keeps a heartbeat there, and publishes the records it has claimed but not yet committed, so a reader
+ * can roll back the records of a writer which has died right away instead of waiting for the timeout.
+ * <p>
+ * In padded mode the limit the writers claim records from and the limit the readers poll are kept apart,
+ * each on cache lines of its own, so a claim doesn't invalidate the line every reader is spinning on. The
+ * published limit is moved up to the end of each record as it's committed or rolled back, and never moves
+ * back, so the readers still check the status flag of each record up to it.
  */
 public class MappedBusWriter {
 
@@ -54,7 +115,49 @@ public class MappedBusWriter {
 	
 	private final long fileSize;
 
-	private final int entrySize;
+	private final int recordSize;
+
+	private int entrySize;
+
+	private boolean segmented;
+
+	private boolean variableLength;
+
+	private boolean timestamped;
+
+	private boolean aligned;
+
+	private boolean padded;
+
+	private int dataOffset = Structure.Data;
+
+	private int metadataOffset = Length.StatusFlag;
+
+	private int timestampOffset;
+
+	private MappedBusIndex index;
+
+	private long segment;
+
+	private final MappedBusRecord claimed = new MappedBusRecord();
+
+	private long claimPos = -1;
+
+	private long pretouchDistance;
+
+	private MappedBusPretoucher pretoucher;
+
+	private MappedBusManager manager;
+
+	private boolean metricsEnabled;
+
+	private MappedBusMetrics metrics;
+
+	private boolean livenessEnabled;
+
+	private long heartbeatTimeout = MappedBusWriterTable.HEARTBEAT_TIMEOUT;
+
+	private MappedBusWriterTable writers;
 
 	/**
 	 * Constructs a new writer.
@@ -66,21 +169,165 @@ public class MappedBusWriter {
 	public MappedBusWriter(String fileName, long fileSize, int recordSize) {
 		this.fileName = fileName;
 		this.fileSize = fileSize;
+		this.recordSize = recordSize;
 		this.entrySize = recordSize + Length.RecordHeader;
 	}
 	
+	/**
+	 * Sets whether the bus is made up of segment files which are rolled over when full.
+	 *
+	 * This method must be called before the writer is opened.
+	 *
+	 * @param segmented true, if the bus is segmented, otherwise false
+	 */
+	public void setSegmented(boolean segmented) {
+		this.segmented = segmented;
+	}
+
+	/**
+	 * Sets whether the records take up only the space needed for their data instead of a fixed size.
+	 *
+	 * This method must be called before the writer is opened.
+	 *
+	 * @param variableLength true, if the records have a variable length, otherwise false
+	 */
+	public void setVariableLength(boolean variableLength) {
+		this.variableLength = variableLength;
+		layout();
+	}
+
+	/**
+	 * Sets whether the time a record is written is stored in its header.
+	 *
+	 * This method must be called before the writer is opened.
+	 *
+	 * @param timestamped true, if the records are timestamped, otherwise false
+	 */
+	public void setTimestamped(boolean timestamped) {
+		this.timestamped = timestamped;
+		layout();
+	}
+
+	/**
+	 * Sets whether each fixed size record takes up a multiple of eight bytes, so its status flag can be
+	 * accessed atomically by the VarHandle memory backend whatever the record size. Timestamped records
+	 * are always aligned, so the timestamp is too. The writers and readers of a bus must agree on it.
+	 *
+	 * This method must be called before the writer is opened.
+	 *
+	 * @param aligned true, if the records are aligned, otherwise false
+	 */
+	public void setAligned(boolean aligned) {
+		this.aligned = aligned;
+		layout();
+	}
+
+	private void layout() {
+		int headerLength = variableLength ? Length.StatusFlag + Length.RecordLength : Length.StatusFlag;
+		if (timestamped) {
+			timestampOffset = align(headerLength);
+			headerLength = timestampOffset + Length.Timestamp;
+		}
+		metadataOffset = headerLength;
+		entrySize = headerLength + Length.Metadata + recordSize;
+		if (aligned || timestamped) {
+			entrySize = align(entrySize);
+		}
+	}
+
+	/**
+	 * Sets whether the file has a padded header, with the limit claimed by the writers and the limit
+	 * published to the readers on separate cache lines.
+	 *
+	 * This method must be called before the writer is opened.
+	 *
+	 * @param padded true, if the file has a padded header, otherwise false
+	 */
+	public void setPadded(boolean padded) {
+		this.padded = padded;
+		this.dataOffset = padded ? PaddedStructure.Data : Structure.Data;
+	}
+
+	/**
+	 * Sets how far ahead of the limit the pages of the file are touched by a background thread, so the
+	 * writer doesn't take a page fault the first time it writes to a page.
+	 *
+	 * This method must be called before the writer is opened.
+	 *
+	 * @param distance the number of bytes to touch ahead of the limit, or 0 to not touch any pages
+	 */
+	public void setPretouch(long distance) {
+		this.pretouchDistance = distance;
+	}
+
+	/**
+	 * Sets whether the writer updates the counters in the metrics file of the bus.
+	 *
+	 * This method must be called before the writer is opened.
+	 *
+	 * @param metricsEnabled true, if the counters are updated, otherwise false
+	 */
+	public void setMetrics(boolean metricsEnabled) {
+		this.metricsEnabled = metricsEnabled;
+	}
+
+	/**
+	 * Sets whether the writer registers in the writer table of the bus, so the readers can tell if it
+	 * has died while holding an uncommitted record.
+	 *
+	 * This method must be called before the writer is opened.
+	 *
+	 * @param livenessEnabled true, if the writer registers in the writer table, otherwise false
+	 */
+	public void setLiveness(boolean livenessEnabled) {
+		this.livenessEnabled = livenessEnabled;
+	}
+
+	/**
+	 * Sets the time after which a writer whose heartbeat has stopped is considered dead, if its process is
+	 * gone too where /proc is available, and its entry in the writer table can be taken over.
+	 *
+	 * This method must be called before the writer is opened.
+	 *
+	 * @param heartbeatTimeout the heartbeat timeout in milliseconds
+	 */
+	public void setHeartbeatTimeout(int heartbeatTimeout) {
+		this.heartbeatTimeout = heartbeatTimeout;
+	}
+
 	/**
 	 * Opens the writer.
 	 *
 	 * @throws IOException if there was an error opening the file
 	 */
 	public void open() throws IOException {
+		if (!variableLength && entrySize % Length.StatusFlag != 0 && MemoryBackend.requiresAlignment()) {
+			throw new IllegalStateException("The " + MemoryBackend.name() + " memory backend requires aligned records for a record size of " + recordSize + ", see setAligned()");
+		}
+		if (segmented) {
+			segment = Math.max(0, MappedBusFiles.segments(fileName)[1]);
+		}
+		String name = currentFileName();
 		try {
-			mem = new MemoryMappedFile(fileName, fileSize);
+			mem = map(name);
 		} catch(Exception e) {
-			throw new IOException("Unable to open the file: " + fileName, e);
+			throw new IOException("Unable to open the file: " + name, e);
+		}
+		mem.compareAndSwapLong(Structure.Limit, 0, dataOffset);
+		if (timestamped && variableLength) {
+			index = MappedBusIndex.open(name, fileSize);
+		}
+		if (pretouchDistance > 0) {
+			pretoucher = new MappedBusPretoucher(mem, fileSize, pretouchDistance);
+			pretoucher.start();
+		}
+		if (metricsEnabled) {
+			metrics = MappedBusMetrics.open(fileName, MetricsType.Writer, fileSize, variableLength ? 0 : entrySize, segmented);
+		}
+		if (livenessEnabled) {
+			writers = MappedBusWriterTable.open(fileName);
+			writers.register(heartbeatTimeout);
 		}
-		mem.compareAndSwapLong(Structure.Limit, 0, Structure.Data);
 	}
 
 	/**
@@ -95,14 +342,42 @@ public class MappedBusWriter {
 		return commit(commitPos);
 	}
 
+	/**
+	 * Writes a message taking up the given number of bytes.
+	 *
+	 * In variable length mode only the given number of bytes is reserved for the message, otherwise
+	 * the length is ignored and the record has the fixed record size.
+	 *
+	 * @param message the message object to write
+	 * @param length the number of bytes written by the message
+	 * @return returns true if the message could be written, or otherwise false
+	 * @throws EOFException in case the end of the file was reached
+	 */
+	public boolean write(MappedBusMessage message, int length) throws EOFException {
+		long commitPos = writeRecord(message, length);
+		return commit(commitPos);
+	}
+
 	protected long writeRecord(MappedBusMessage message) throws EOFException {
-		long limit = allocate();
-		long commitPos = limit;
-		limit += Length.StatusFlag;
-		mem.putInt(limit, message.type());
+		return writeRecord(message, recordSize);
+	}
+
+	protected long writeRecord(MappedBusMessage message, int length) throws EOFException {
+		long commitPos = allocate(length);
+		putRecord(commitPos, message);
+		return commitPos;
+	}
+
+	private void putRecord(long commitPos, MappedBusMessage message) {
+		stamp(commitPos);
+		long limit = commitPos;
+		limit += metadataOffset;
+		int type = message.type();
+		mem.putInt(limit, type);
 		limit += Length.Metadata;
+		long start = EVENTS.beginWrite();
 		message.write(mem, limit);
-		return commitPos;
+		EVENTS.endWrite(start, fileName, segment, commitPos, type);
 	}
 
 	/**
@@ -120,25 +395,387 @@ public class MappedBusWriter {
 	}
 
 	protected long writeRecord(byte[] src, int offset, int length) throws EOFException {
-		long limit = allocate();
-		long commitPos = limit;
-		limit += Length.StatusFlag;
+		long commitPos = allocate(length);
+		putRecord(commitPos, src, offset, length);
+		return commitPos;
+	}
+
+	private void putRecord(long commitPos, byte[] src, int offset, int length) {
+		stamp(commitPos);
+		long limit = commitPos;
+		limit += metadataOffset;
 		mem.putInt(limit, length);
 		limit += Length.Metadata;
 		mem.setBytes(limit, src, offset, length);
+	}
+
+	/**
+	 * Claims a record which is written to in place.
+	 *
+	 * The returned record is reused by the writer, and is published with {@link #commit()} or rolled back
+	 * with {@link #abort()}. Only one record can be claimed at a time.
+	 *
+	 * @param length the length of the data
+	 * @return the claimed record
+	 * @throws EOFException in case the end of the file was reached
+	 */
+	public MappedBusRecord tryClaim(int length) throws EOFException {
+		if (claimPos != -1) {
+			throw new IllegalStateException("The claimed record hasn't been committed or aborted");
+		}
+		if (length < 0 || length > recordSize) {
+			throw new IllegalArgumentException("The length " + length + " exceeds the record size " + recordSize);
+		}
+		long commitPos = allocate(length);
+		stamp(commitPos);
+		long pos = commitPos + metadataOffset;
+		mem.putInt(pos, length);
+		pos += Length.Metadata;
+		claimed.wrap(mem, pos, length, length);
+		claimPos = commitPos;
+		return claimed;
+	}
+
+	/**
+	 * Commits the claimed record.
+	 *
+	 * @return returns true if the record could be committed, or false if a reader rolled it back
+	 */
+	public boolean commit() {
+		long commitPos = releaseClaim();
+		return commit(commitPos);
+	}
+
+	/**
+	 * Rolls back the claimed record, so the readers skip it.
+	 */
+	public void abort() {
+		long commitPos = releaseClaim();
+		mem.compareAndSwapInt(commitPos, StatusFlag.NotSet, StatusFlag.Rollback);
+		if (padded) {
+			publish(commitPos + recordLength(commitPos));
+		}
+		if (writers != null) {
+			writers.release(segment * fileSize + commitPos);
+		}
+		if (metrics != null) {
+			metrics.increment(MetricsCounter.Aborted);
+		}
+		EVENTS.rollback(fileName, segment, commitPos, 0, false);
+	}
+
+	private long releaseClaim() {
+		if (claimPos == -1) {
+			throw new IllegalStateException("No record has been claimed");
+		}
+		long commitPos = claimPos;
+		claimPos = -1;
 		return commitPos;
 	}
 
-	private long allocate() throws EOFException {
-		long limit = mem.getAndAddLong(Structure.Limit, entrySize);
-		if (limit + entrySize > fileSize) {
-			throw new EOFException("End of file was reached");
+	private void stamp(long commitPos) {
+		if (timestamped) {
+			long time = System.currentTimeMillis();
+			mem.putLong(commitPos + timestampOffset, time);
+			if (index != null && MappedBusIndex.isIndexed(commitPos, mem.getInt(commitPos + Length.StatusFlag))) {
+				index.append(time, commitPos);
+			}
+		}
+	}
+
+	/**
+	 * Writes a batch of messages using a single update of the limit.
+	 *
+	 * @param messages the message objects to write
+	 * @param offset the index of the first message to write
+	 * @param length the number of messages to write
+	 * @return the number of messages which could be written
+	 * @throws EOFException in case the end of the file was reached
+	 */
+	public int write(MappedBusMessage[] messages, int offset, int length) throws EOFException {
+		long first = claim(length);
+		for (int i = 0; i < length; i++) {
+			writeRecord(first, i, messages[offset + i]);
+		}
+		return commit(first, length);
+	}
+
+	/**
+	 * Claims a number of consecutive records using a single update of the limit.
+	 *
+	 * The records are filled in with the writeRecord methods taking the position of the first record,
+	 * and are then committed with {@link #commit(long, int)}. Batches are only supported for fixed size records.
+	 *
+	 * @param records the number of records to claim
+	 * @return the position of the first record
+	 * @throws EOFException in case the end of the file was reached
+	 */
+	public long claim(int records) throws EOFException {
+		if (variableLength) {
+			throw new IllegalStateException("A batch can only be claimed for fixed size records");
+		}
+		if (records < 1 || dataOffset + (long)records * entrySize > fileSize) {
+			throw new IllegalArgumentException("The batch of " + records + " records doesn't fit in the file");
+		}
+		return allocateFixed(records);
+	}
+
+	/**
+	 * Writes a message into a record of a claimed batch.
+	 *
+	 * @param first the position of the first record of the batch
+	 * @param index the index of the record in the batch
+	 * @param message the message object to write
+	 * @return the position of the record
+	 */
+	public long writeRecord(long first, int index, MappedBusMessage message) {
+		long commitPos = first + (long)index * entrySize;
+		putRecord(commitPos, message);
+		return commitPos;
+	}
+
+	/**
+	 * Writes a buffer of data into a record of a claimed batch.
+	 *
+	 * @param first the position of the first record of the batch
+	 * @param index the index of the record in the batch
+	 * @param src the output buffer
+	 * @param offset the offset in the buffer of the first byte to write
+	 * @param length the length of the data
+	 * @return the position of the record
+	 */
+	public long writeRecord(long first, int index, byte[] src, int offset, int length) {
+		long commitPos = first + (long)index * entrySize;
+		putRecord(commitPos, src, offset, length);
+		return commitPos;
+	}
+
+	/**
+	 * Commits the records of a claimed batch in order.
+	 *
+	 * @param first the position of the first record of the batch
+	 * @param records the number of records in the batch
+	 * @return the number of records which could be committed, records rolled back by a reader are not counted
+	 */
+	public int commit(long first, int records) {
+		int committed = 0;
+		for (int i = 0; i < records; i++) {
+			if (commit(first + (long)i * entrySize)) {
+				committed++;
+			}
+		}
+		return committed;
+	}
+
+	private long allocate(int length) throws EOFException {
+		if (variableLength) {
+			return allocateVariable(length);
+		}
+		return allocateFixed(1);
+	}
+
+	private long allocateFixed(int records) throws EOFException {
+		long size = (long)records * entrySize;
+		long limit = mem.getAndAddLong(Structure.Limit, size);
+		while (limit + size > fileSize) {
+			// the records of the batch which fit in the file will never be written
+			for (long pos = limit; pos + entrySize <= fileSize; pos += entrySize) {
+				mem.compareAndSwapInt(pos, StatusFlag.NotSet, StatusFlag.Rollback);
+			}
+			if (padded) {
+				// the rolled back records at the end of the file are published for the readers to skip
+				publish(fileSize);
+			}
+			if (!segmented) {
+				endOfFile(limit);
+			}
+			nextSegment();
+			limit = mem.getAndAddLong(Structure.Limit, size);
+		}
+		if (writers != null) {
+			writers.claim(segment * fileSize + limit, segment * fileSize + limit + size);
+		}
+		if (metrics != null) {
+			metrics.add(MetricsCounter.Written, records);
 		}
 		return limit;
 	}
 
+	/**
+	 * Claims a variable length record.
+	 *
+	 * The writer first sets the length field of the record at the limit, which only succeeds for one
+	 * writer, and then moves the limit past the record. A writer finding the length field already set
+	 * helps moving the limit before trying again, so the limit moves on even if the writer owning the
+	 * record crashed in between.
+	 */
+	private long allocateVariable(int length) throws EOFException {
+		if (length > recordSize) {
+			throw new IllegalArgumentException("The length " + length + " exceeds the record size " + recordSize);
+		}
+		int recordLength = align(metadataOffset + Length.Metadata + length);
+		while (true) {
+			long limit = mem.getLongVolatile(Structure.Limit);
+			if (limit + recordLength > fileSize) {
+				if (!pad(limit)) {
+					continue;
+				}
+				if (!segmented) {
+					endOfFile(limit);
+				}
+				nextSegment();
+				continue;
+			}
+			if (mem.compareAndSwapInt(limit + Length.StatusFlag, 0, recordLength)) {
+				mem.compareAndSwapLong(Structure.Limit, limit, limit + recordLength);
+				if (writers != null) {
+					writers.claim(segment * fileSize + limit, segment * fileSize + limit + recordLength);
+				}
+				if (metrics != null) {
+					metrics.increment(MetricsCounter.Written);
+				}
+				return limit;
+			}
+			int claimed = mem.getIntVolatile(limit + Length.StatusFlag);
+			mem.compareAndSwapLong(Structure.Limit, limit, limit + claimed);
+		}
+	}
+
+	/**
+	 * Fills up the rest of the file with a rolled back record, so the readers skip to the end of it.
+	 *
+	 * @return true, if the file is full, or false if another writer claimed the record at the limit
+	 */
+	private boolean pad(long limit) {
+		if (limit + align(Length.VariableRecordHeader) > fileSize) {
+			return true;
+		}
+		int recordLength = (int)(fileSize - limit);
+		if (mem.compareAndSwapInt(limit + Length.StatusFlag, 0, recordLength)) {
+			mem.compareAndSwapLong(Structure.Limit, limit, limit + recordLength);
+			mem.compareAndSwapInt(limit, StatusFlag.NotSet, StatusFlag.Rollback);
+			if (padded) {
+				publish(fileSize);
+			}
+			return true;
+		}
+		int claimed = mem.getIntVolatile(limit + Length.StatusFlag);
+		mem.compareAndSwapLong(Structure.Limit, limit, limit + claimed);
+		return false;
+	}
+
+	/**
+	 * Moves the published limit of a padded file up to a position, unless another writer has already
+	 * moved it further.
+	 */
+	private void publish(long position) {
+		long published = mem.getLongVolatile(PaddedStructure.Published);
+		while (published < position && !mem.compareAndSwapLong(PaddedStructure.Published, published, position)) {
+			published = mem.getLongVolatile(PaddedStructure.Published);
+		}
+	}
+
+	private int recordLength(long pos) {
+		if (variableLength) {
+			return mem.getInt(pos + Length.StatusFlag);
+		}
+		return entrySize;
+	}
+
+	private void endOfFile(long limit) throws EOFException {
+		if (metrics != null) {
+			metrics.increment(MetricsCounter.EndOfFile);
+		}
+		EVENTS.endOfFile(fileName, segment, limit, false);
+		throw new EOFException("End of file was reached");
+	}
+
+	static int align(int length) {
+		return (length + Length.RecordAlignment - 1) & ~(Length.RecordAlignment - 1);
+	}
+
+	private void nextSegment() throws EOFException {
+		String name = MappedBusFiles.segment(fileName, segment + 1);
+		MemoryMappedFile next;
+		try {
+			next = map(name);
+		} catch(Exception e) {
+			EOFException eof = new EOFException("Unable to open the next segment: " + name);
+			eof.initCause(e);
+			throw eof;
+		}
+		next.compareAndSwapLong(Structure.Limit, 0, dataOffset);
+		if (index != null) {
+			MappedBusIndex nextIndex;
+			try {
+				nextIndex = MappedBusIndex.open(name, fileSize);
+			} catch(IOException e) {
+				EOFException eof = new EOFException("Unable to open the index of the next segment: " + name);
+				eof.initCause(e);
+				throw eof;
+			}
+			try {
+				index.close();
+			} catch(Exception e) {
+				// the old index is no longer used, so a failure to unmap it only leaks the mapping
+			}
+			index = nextIndex;
+		}
+		if (pretoucher != null) {
+			pretoucher.rebind(next);
+		}
+		try {
+			unmap(mem);
+		} catch(Exception e) {
+			// the old segment is no longer used, so a failure to unmap it only leaks the mapping
+		}
+		mem = next;
+		segment++;
+	}
+
+	MappedBusWriterTable writers() {
+		return writers;
+	}
+
+	MappedBusPretoucher pretoucher() {
+		return pretoucher;
+	}
+
+	private MemoryMappedFile map(String name) throws Exception {
+		return manager != null ? MappedBusManager.map(name, fileSize) : new MemoryMappedFile(name, fileSize);
+	}
+
+	private void unmap(MemoryMappedFile mem) throws Exception {
+		if (manager != null) {
+			MappedBusManager.unmap(mem);
+		} else {
+			mem.unmap();
+		}
+	}
+
+	/**
+	 * Shares the mappings of the files with the other writers and readers of a manager.
+	 */
+	void share(MappedBusManager manager) {
+		this.manager = manager;
+	}
+
+	private String currentFileName() {
+		return segmented ? MappedBusFiles.segment(fileName, segment) : fileName;
+	}
+
 	protected boolean commit(long commitPos) {
-		return mem.compareAndSwapInt(commitPos, StatusFlag.NotSet, StatusFlag.Commit);
+		boolean committed = mem.compareAndSwapInt(commitPos, StatusFlag.NotSet, StatusFlag.Commit);
+		if (padded) {
+			publish(commitPos + recordLength(commitPos));
+		}
+		if (writers != null) {
+			writers.release(segment * fileSize + commitPos);
+		}
+		if (metrics != null) {
+			metrics.increment(committed ? MetricsCounter.Committed : MetricsCounter.CommitFailed);
+		}
+		return committed;
 	}
 
 	/**
@@ -147,8 +784,23 @@ public class MappedBusWriter {
 	 * @throws IOException if there was an error closing the file
 	 */
 	public void close() throws IOException {
+		if (pretoucher != null) {
+			pretoucher.stop();
+			pretoucher = null;
+		}
 		try {
-			mem.unmap();
+			if (index != null) {
+				index.close();
+			}
+			if (metrics != null) {
+				metrics.close();
+				metrics = null;
+			}
+			if (writers != null) {
+				writers.close();
+				writers = null;
+			}
+			unmap(mem);
 		} catch(Exception e) {
 			throw new IOException("Unable to close the file", e);
 		}
@@ -0,0 +1,250 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import io.mappedbus.MappedBusConstants.WriterState;
+import io.mappedbus.MappedBusConstants.WriterTableLength;
+import io.mappedbus.MappedBusConstants.WriterTableStructure;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class for the table of the writers of a bus, used by the readers to tell a dead writer from a slow one.
+ * <p>
+ * Each writer claims an entry holding its process id, a heartbeat updated by a background thread, and
+ * the range of positions it has claimed but not yet committed. The start of the range is cleared before
+ * the end is changed, so a reader finding the same start before and after reading the end has a
+ * consistent range. A writer is dead when its heartbeat is older than the heartbeat timeout and, where
+ * /proc is available, its process is gone too, so a stalled writer whose process is running is still
+ * alive, and so is a writer in another process id namespace, which has no entry in /proc, as long as its
+ * heartbeat is fresh. Where /proc isn't available the heartbeat timeout used by a reader is never
+ * shorter than its timeout for a record to be committed.
+ * <p>
+ * The heartbeat of an entry is set before the entry is claimed, so an entry left claimed by a writer
+ * which died while registering is taken over once its heartbeat is older than the claim timeout.
+ * <p>
+ * A writer which dies between claiming a record and publishing its range can't be told apart from
+ * one which hasn't published it yet, so the readers fall back on the timeout for such a record.
+ *
+ */
+class MappedBusWriterTable implements Runnable {
+
+	static final long HEARTBEAT_INTERVAL = 100;
+
+	static final long HEARTBEAT_TIMEOUT = 1000;
+
+	static final long CLAIM_TIMEOUT = 2000;
+
+	private static final long NONE = Long.MAX_VALUE;
+
+	private static final File PROC = new File("/proc");
+
+	private static final boolean PROC_AVAILABLE = new File(PROC, "self").exists();
+
+	private final MemoryMappedFile mem;
+
+	private final String name;
+
+	private long entry = -1;
+
+	private Thread thread;
+
+	private volatile boolean running;
+
+	private MappedBusWriterTable(MemoryMappedFile mem, String name) {
+		this.mem = mem;
+		this.name = name;
+	}
+
+	/**
+	 * Opens the writer table of a bus.
+	 *
+	 * @param fileName the name of the bus
+	 * @return the writer table
+	 * @throws IOException if there was a problem opening the file
+	 */
+	static MappedBusWriterTable open(String fileName) throws IOException {
+		String name = MappedBusFiles.writers(fileName);
+		try {
+			return new MappedBusWriterTable(new MemoryMappedFile(name, WriterTableLength.Writers), name);
+		} catch(Exception e) {
+			throw new IOException("Unable to open the file: " + name, e);
+		}
+	}
+
+	/**
+	 * Claims an entry for the writer and starts the heartbeat thread.
+	 *
+	 * A free entry is taken first, and otherwise the entry of a dead writer, or an entry left claimed by a
+	 * writer which died while registering.
+	 *
+	 * @param heartbeatTimeout the heartbeat timeout in milliseconds
+	 * @throws IOException if all entries are used by live writers
+	 */
+	void register(long heartbeatTimeout) throws IOException {
+		for (int pass = 0; pass < 2 && entry == -1; pass++) {
+			for (int i = 0; i < WriterTableLength.MaxWriters; i++) {
+				long entry = entry(i);
+				if (pass == 0 ? claim(entry) : takeOver(entry, heartbeatTimeout)) {
+					this.entry = entry;
+					break;
+				}
+			}
+		}
+		if (entry == -1) {
+			throw new IOException("All " + WriterTableLength.MaxWriters + " writer entries are in use: " + name);
+		}
+		mem.putLong(entry + WriterTableStructure.Start, NONE);
+		mem.putLong(entry + WriterTableStructure.End, NONE);
+		mem.putLong(entry + WriterTableStructure.Pid, pid());
+		mem.putLong(entry + WriterTableStructure.Heartbeat, System.currentTimeMillis());
+		mem.putIntVolatile(entry + WriterTableStructure.State, WriterState.Active);
+		running = true;
+		thread = new Thread(this, "mappedbus-heartbeat");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private boolean claim(long entry) {
+		if (mem.getIntVolatile(entry + WriterTableStructure.State) != WriterState.Free) {
+			return false;
+		}
+		mem.putLongVolatile(entry + WriterTableStructure.Heartbeat, System.currentTimeMillis());
+		return mem.compareAndSwapInt(entry + WriterTableStructure.State, WriterState.Free, WriterState.Claimed);
+	}
+
+	private boolean takeOver(long entry, long heartbeatTimeout) {
+		int state = mem.getIntVolatile(entry + WriterTableStructure.State);
+		if (state == WriterState.Claimed) {
+			// the heartbeat is swapped, so only one writer takes the entry over, and none if the writer
+			// registering in it has moved on
+			long heartbeat = mem.getLongVolatile(entry + WriterTableStructure.Heartbeat);
+			long now = System.currentTimeMillis();
+			return now - heartbeat > CLAIM_TIMEOUT && mem.compareAndSwapLong(entry + WriterTableStructure.Heartbeat, heartbeat, now);
+		}
+		return state == WriterState.Active && isDead(entry, heartbeatTimeout, heartbeatTimeout)
+				&& mem.compareAndSwapInt(entry + WriterTableStructure.State, WriterState.Active, WriterState.Claimed);
+	}
+
+	static long entry(int i) {
+		return (long)i * WriterTableLength.Writer;
+	}
+
+	/**
+	 * Publishes the range of positions claimed by the writer, as the number of bytes from the start of the
+	 * first segment.
+	 */
+	void claim(long start, long end) {
+		mem.putLongOrdered(entry + WriterTableStructure.Start, NONE);
+		mem.putLongOrdered(entry + WriterTableStructure.End, end);
+		mem.putLongOrdered(entry + WriterTableStructure.Start, start);
+	}
+
+	/**
+	 * Removes the record at a position, and the ones before it, from the claimed range.
+	 */
+	void release(long position) {
+		mem.putLongOrdered(entry + WriterTableStructure.Start, position + 1);
+	}
+
+	/**
+	 * Returns whether the record at a position is claimed by a writer which has died.
+	 *
+	 * @param position the position of the record, as the number of bytes from the start of the first segment
+	 * @param heartbeatTimeout the heartbeat timeout in milliseconds
+	 * @param timeout the timeout of the reader, the shortest heartbeat timeout used where /proc isn't available
+	 * @return true, if the writer owning the record is dead, or false if it's alive or not known
+	 */
+	boolean isOwnerDead(long position, long heartbeatTimeout, long timeout) {
+		for (int i = 0; i < WriterTableLength.MaxWriters; i++) {
+			long entry = entry(i);
+			if (!isActive(entry)) {
+				continue;
+			}
+			long start = mem.getLongVolatile(entry + WriterTableStructure.Start);
+			if (position < start) {
+				continue;
+			}
+			long end = mem.getLongVolatile(entry + WriterTableStructure.End);
+			if (position >= end || mem.getLongVolatile(entry + WriterTableStructure.Start) != start) {
+				continue;
+			}
+			return isDead(entry, heartbeatTimeout, timeout);
+		}
+		return false;
+	}
+
+	private boolean isActive(long entry) {
+		return mem.getIntVolatile(entry + WriterTableStructure.State) == WriterState.Active;
+	}
+
+	private boolean isDead(long entry, long heartbeatTimeout, long timeout) {
+		long age = System.currentTimeMillis() - mem.getLongVolatile(entry + WriterTableStructure.Heartbeat);
+		long pid = mem.getLong(entry + WriterTableStructure.Pid);
+		if (PROC_AVAILABLE && pid > 0) {
+			return age > heartbeatTimeout && !new File(PROC, Long.toString(pid)).exists();
+		}
+		return age > Math.max(heartbeatTimeout, timeout);
+	}
+
+	static long pid() {
+		String name = ManagementFactory.getRuntimeMXBean().getName();
+		int at = name.indexOf('@');
+		try {
+			return Long.parseLong(at > 0 ? name.substring(0, at) : name);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	public void run() {
+		long interval = TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_INTERVAL);
+		while (running) {
+			mem.putLongOrdered(entry + WriterTableStructure.Heartbeat, System.currentTimeMillis());
+			LockSupport.parkNanos(interval);
+		}
+	}
+
+	/**
+	 * Stops the heartbeat thread.
+	 */
+	void stop() {
+		if (thread != null) {
+			running = false;
+			LockSupport.unpark(thread);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+	}
+
+	/**
+	 * Stops the heartbeat thread, frees the entry of the writer if it has one, and unmaps the file.
+	 */
+	void close() throws Exception {
+		stop();
+		if (entry != -1) {
+			mem.putIntVolatile(entry + WriterTableStructure.State, WriterState.Free);
+			entry = -1;
+		}
+		mem.unmap();
+	}
+}
@@ -0,0 +1,128 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package io.mappedbus;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Class for the memory access used by {@link MemoryMappedFile}.
+ * <p>
+ * The backend is chosen once at startup using the system property "mappedbus.memory":
+ * <ul>
+ * <li>"unsafe" maps the file through FileChannelImpl and accesses it using sun.misc.Unsafe</li>
+ * <li>"varhandle" maps the file through FileChannel.map and accesses it using VarHandles, which requires Java 17</li>
+ * </ul>
+ * By default the Unsafe backend is used when it's available, and otherwise the VarHandle backend.
+ *
+ */
+abstract class MemoryBackend {
+
+	static final String PROPERTY = "mappedbus.memory";
+
+	static final String UNSAFE = "unsafe";
+
+	static final String VARHANDLE = "varhandle";
+
+	private static final String VARHANDLE_CLASS = "io.mappedbus.VarHandleMemoryBackend";
+
+	private static final String backend;
+
+	private static final Constructor<?> varHandleConstructor;
+
+	static {
+		Constructor<?> constructor = null;
+		try {
+			constructor = Class.forName(VARHANDLE_CLASS).getDeclaredConstructor(String.class, long.class);
+		} catch(Throwable t) {
+			// the backend is only built with Java 17 or later
+		}
+		varHandleConstructor = constructor;
+		String name = System.getProperty(PROPERTY);
+		if (name == null) {
+			name = UnsafeMemoryBackend.isAvailable() || varHandleConstructor == null ? UNSAFE : VARHANDLE;
+		}
+		backend = name;
+	}
+
+	/**
+	 * Returns the name of the backend chosen at startup.
+	 *
+	 * @return the name of the backend
+	 */
+	static String name() {
+		return backend;
+	}
+
+	/**
+	 * Returns whether the backend requires the values accessed atomically to be aligned to their size.
+	 *
+	 * @return true, if the backend requires aligned atomic access, otherwise false
+	 */
+	static boolean requiresAlignment() {
+		return VARHANDLE.equals(backend);
+	}
+
+	static MemoryBackend open(String loc, long size) throws Exception {
+		if (UNSAFE.equals(backend)) {
+			return new UnsafeMemoryBackend(loc, size);
+		}
+		if (VARHANDLE.equals(backend)) {
+			if (varHandleConstructor == null) {
+				throw new IllegalStateException("The " + VARHANDLE + " memory backend is not available");
+			}
+			return (MemoryBackend)varHandleConstructor.newInstance(loc, size);
+		}
+		throw new IllegalStateException("Unknown memory backend: " + backend);
+	}
+
+	abstract void unmap() throws Exception;
+
+	abstract byte getByte(long pos);
+
+	abstract byte getByteVolatile(long pos);
+
+	abstract int getInt(long pos);
+
+	abstract int getIntVolatile(long pos);
+
+	abstract long getLong(long pos);
+
+	abstract long getLongVolatile(long pos);
+
+	abstract void putByte(long pos, byte val);
+
+	abstract void putByteVolatile(long pos, byte val);
+
+	abstract void putInt(long pos, int val);
+
+	abstract void putIntVolatile(long pos, int val);
+
+	abstract void putLong(long pos, long val);
+
+	abstract void putLongVolatile(long pos, long val);
+
+	abstract void putLongOrdered(long pos, long val);
+
+	abstract void loadFence();
+
+	abstract void getBytes(long pos, byte[] data, int offset, int length);
+
+	abstract void setBytes(long pos, byte[] data, int offset, int length);
+
+	abstract boolean compareAndSwapInt(long pos, int expected, int value);
+
+	abstract boolean compareAndSwapLong(long pos, long expected, long value);
+
+	abstract long getAndAddLong(long pos, long delta);
+}
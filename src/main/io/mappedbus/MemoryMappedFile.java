@@ -2,61 +2,23 @@
 * This class was inspired from an entry in Bryce Nyeggen's blog 
 */
 package io.mappedbus;
-import java.io.RandomAccessFile;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.nio.channels.FileChannel;
- 
-import sun.nio.ch.FileChannelImpl;
-import sun.misc.Unsafe;
  
 /**
  * Class for direct access to a memory mapped file. 
+ * <p>
+ * The memory is accessed either using sun.misc.Unsafe or using VarHandles (Java 17 or later), which is
+ * chosen at startup with the system property "mappedbus.memory" set to "unsafe" or "varhandle". By default
+ * Unsafe is used when it's available.
  *
  */
-@SuppressWarnings("restriction")
 public class MemoryMappedFile {
  
-	private static final Unsafe unsafe;
-	private static final Method mmap;
-	private static final Method unmmap;
-	private static final int BYTE_ARRAY_OFFSET;
- 
-	private long addr, size;
-	private final String loc;
- 
-	static {
-		try {
-			Field singleoneInstanceField = Unsafe.class.getDeclaredField("theUnsafe");
-			singleoneInstanceField.setAccessible(true);
-			unsafe = (Unsafe) singleoneInstanceField.get(null);
-			mmap = getMethod(FileChannelImpl.class, "map0", int.class, long.class, long.class);
-			unmmap = getMethod(FileChannelImpl.class, "unmap0", long.class, long.class);
-			BYTE_ARRAY_OFFSET = unsafe.arrayBaseOffset(byte[].class);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	private static Method getMethod(Class<?> cls, String name, Class<?>... params) throws Exception {
-		Method m = cls.getDeclaredMethod(name, params);
-		m.setAccessible(true);
-		return m;
-	}
+	private final MemoryBackend memory;
  
 	private static long roundTo4096(long i) {
 		return (i + 0xfffL) & ~0xfffL;
 	}
  
-	private void mapAndSetOffset() throws Exception {
-		final RandomAccessFile backingFile = new RandomAccessFile(this.loc, "rw");
-		backingFile.setLength(this.size);
-		final FileChannel ch = backingFile.getChannel();
-		this.addr = (long) mmap.invoke(ch, 1, 0L, this.size);
-		ch.close();
-		backingFile.close();
-	}
- 
 	/**
 	 * Constructs a new memory mapped file.
 	 * @param loc the file name
@@ -64,13 +26,19 @@ public class MemoryMappedFile {
 	 * @throws Exception in case there was an error creating the memory mapped file
 	 */
 	protected MemoryMappedFile(final String loc, long len) throws Exception {
-		this.loc = loc;
-		this.size = roundTo4096(len);
-		mapAndSetOffset();
+		this.memory = MemoryBackend.open(loc, roundTo4096(len));
+	}
+
+	/**
+	 * Returns the name of the memory backend chosen at startup.
+	 * @return "unsafe" or "varhandle"
+	 */
+	public static String backend() {
+		return MemoryBackend.name();
 	}
 
 	protected void unmap() throws Exception {
-		unmmap.invoke(null, addr, this.size);
+		memory.unmap();
 	}
 	
 	/**
@@ -79,7 +47,7 @@ public class MemoryMappedFile {
 	 * @return the value read
 	 */
 	public byte getByte(long pos) {
-		return unsafe.getByte(pos + addr);
+		return memory.getByte(pos);
 	}
 
 	/**
@@ -88,7 +56,7 @@ public class MemoryMappedFile {
 	 * @return the value read
 	 */
 	protected byte getByteVolatile(long pos) {
-		return unsafe.getByteVolatile(null, pos + addr);
+		return memory.getByteVolatile(pos);
 	}
  
 	/**
@@ -97,7 +65,7 @@ public class MemoryMappedFile {
 	 * @return the value read
 	 */
 	public int getInt(long pos) {
-		return unsafe.getInt(pos + addr);
+		return memory.getInt(pos);
 	}
 
 	/**
@@ -106,7 +74,7 @@ public class MemoryMappedFile {
 	 * @return the value read
 	 */
 	protected int getIntVolatile(long pos) {
-		return unsafe.getIntVolatile(null, pos + addr);
+		return memory.getIntVolatile(pos);
 	}
 
 	/**
@@ -115,7 +83,7 @@ public class MemoryMappedFile {
 	 * @return the value read
 	 */
 	public long getLong(long pos) {
-		return unsafe.getLong(pos + addr);
+		return memory.getLong(pos);
 	}
 	
 	/**
@@ -124,7 +92,7 @@ public class MemoryMappedFile {
 	 * @return the value read
 	 */
 	protected long getLongVolatile(long pos) {
-		return unsafe.getLongVolatile(null, pos + addr);
+		return memory.getLongVolatile(pos);
 	}
 	
 	/**
@@ -133,7 +101,7 @@ public class MemoryMappedFile {
 	 * @param val the value to write
 	 */
 	public void putByte(long pos, byte val) {
-		unsafe.putByte(pos + addr, val);
+		memory.putByte(pos, val);
 	}
 	
 	/**
@@ -142,7 +110,7 @@ public class MemoryMappedFile {
 	 * @param val the value to write
 	 */
 	protected void putByteVolatile(long pos, byte val) {
-		unsafe.putByteVolatile(null, pos + addr, val);
+		memory.putByteVolatile(pos, val);
 	}
 
 	/**
@@ -151,7 +119,7 @@ public class MemoryMappedFile {
 	 * @param val the value to write
 	 */
 	public void putInt(long pos, int val) {
-		unsafe.putInt(pos + addr, val);
+		memory.putInt(pos, val);
 	}
 
 	/**
@@ -160,7 +128,7 @@ public class MemoryMappedFile {
 	 * @param val the value to write
 	 */
 	protected void putIntVolatile(long pos, int val) {
-		unsafe.putIntVolatile(null, pos + addr, val);
+		memory.putIntVolatile(pos, val);
 	}
 
 	/**
@@ -169,7 +137,7 @@ public class MemoryMappedFile {
 	 * @param val the value to write
 	 */
 	public void putLong(long pos, long val) {
-		unsafe.putLong(pos + addr, val);
+		memory.putLong(pos, val);
 	}
 	
 	/**
@@ -178,7 +146,23 @@ public class MemoryMappedFile {
 	 * @param val the value to write
 	 */
 	protected void putLongVolatile(long pos, long val) {
-		unsafe.putLongVolatile(null, pos + addr, val);
+		memory.putLongVolatile(pos, val);
+	}
+	
+	/**
+	 * Writes a long (ordered) to the specified position.
+	 * @param pos the position in the memory mapped file
+	 * @param val the value to write
+	 */
+	protected void putLongOrdered(long pos, long val) {
+		memory.putLongOrdered(pos, val);
+	}
+	
+	/**
+	 * Ensures that the reads before the fence aren't reordered with the reads after it.
+	 */
+	protected void loadFence() {
+		memory.loadFence();
 	}
 	
 	/**
@@ -189,7 +173,7 @@ public class MemoryMappedFile {
 	 * @param length the length of the data
 	 */
 	public void getBytes(long pos, byte[] data, int offset, int length) {
-		unsafe.copyMemory(null, pos + addr, data, BYTE_ARRAY_OFFSET + offset, length);
+		memory.getBytes(pos, data, offset, length);
 	}
  
 	/**
@@ -200,18 +184,18 @@ public class MemoryMappedFile {
 	 * @param length the length of the data
 	 */
 	public void setBytes(long pos, byte[] data, int offset, int length) {
-		unsafe.copyMemory(data, BYTE_ARRAY_OFFSET + offset, null, pos + addr, length);
+		memory.setBytes(pos, data, offset, length);
 	}
 
 	protected boolean compareAndSwapInt(long pos, int expected, int value) {
-		return unsafe.compareAndSwapInt(null, pos + addr, expected, value);
+		return memory.compareAndSwapInt(pos, expected, value);
 	}
 		
 	protected boolean compareAndSwapLong(long pos, long expected, long value) {
-		return unsafe.compareAndSwapLong(null, pos + addr, expected, value);
+		return memory.compareAndSwapLong(pos, expected, value);
 	}
 
 	protected long getAndAddLong(long pos, long delta) {
-		return unsafe.getAndAddLong(null, pos + addr, delta);
+		return memory.getAndAddLong(pos, delta);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+/*
+* This class was inspired from an entry in Bryce Nyeggen's blog
+*/
+package io.mappedbus;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+
+import sun.nio.ch.FileChannelImpl;
+import sun.misc.Unsafe;
+
+/**
+ * Class for accessing a memory mapped file using sun.misc.Unsafe.
+ *
+ */
+@SuppressWarnings("restriction")
+final class UnsafeMemoryBackend extends MemoryBackend {
+
+	private static final Unsafe unsafe;
+	private static final Method mmap;
+	private static final boolean mmapSync;
+	private static final Method unmmap;
+	private static final int BYTE_ARRAY_OFFSET;
+	private static final Exception unavailable;
+
+	private final long addr, size;
+	private final String loc;
+
+	static {
+		Unsafe u = null;
+		Method m = null;
+		boolean sync = false;
+		Method um = null;
+		int offset = 0;
+		Exception cause = null;
+		try {
+			Field singleoneInstanceField = Unsafe.class.getDeclaredField("theUnsafe");
+			singleoneInstanceField.setAccessible(true);
+			u = (Unsafe) singleoneInstanceField.get(null);
+			try {
+				m = getMethod(FileChannelImpl.class, "map0", int.class, long.class, long.class);
+			} catch (NoSuchMethodException e) {
+				// from Java 14 map0 takes a flag for synchronous mappings
+				m = getMethod(FileChannelImpl.class, "map0", int.class, long.class, long.class, boolean.class);
+				sync = true;
+			}
+			um = getMethod(FileChannelImpl.class, "unmap0", long.class, long.class);
+			offset = u.arrayBaseOffset(byte[].class);
+		} catch (Exception e) {
+			cause = e;
+		} catch (LinkageError e) {
+			cause = new Exception(e);
+		}
+		unsafe = u;
+		mmap = m;
+		mmapSync = sync;
+		unmmap = um;
+		BYTE_ARRAY_OFFSET = offset;
+		unavailable = cause;
+	}
+
+	private static Method getMethod(Class<?> cls, String name, Class<?>... params) throws Exception {
+		Method m = cls.getDeclaredMethod(name, params);
+		m.setAccessible(true);
+		return m;
+	}
+
+	static boolean isAvailable() {
+		return unavailable == null;
+	}
+
+	UnsafeMemoryBackend(final String loc, long size) throws Exception {
+		if (unavailable != null) {
+			throw new IllegalStateException("The " + UNSAFE + " memory backend is not available", unavailable);
+		}
+		this.loc = loc;
+		this.size = size;
+		this.addr = map();
+	}
+
+	private long map() throws Exception {
+		final RandomAccessFile backingFile = new RandomAccessFile(this.loc, "rw");
+		backingFile.setLength(this.size);
+		final FileChannel ch = backingFile.getChannel();
+		long addr = mmapSync ? (long) mmap.invoke(ch, 1, 0L, this.size, false) : (long) mmap.invoke(ch, 1, 0L, this.size);
+		ch.close();
+		backingFile.close();
+		return addr;
+	}
+
+	void unmap() throws Exception {
+		unmmap.invoke(null, addr, this.size);
+	}
+
+	byte getByte(long pos) {
+		return unsafe.getByte(pos + addr);
+	}
+
+	byte getByteVolatile(long pos) {
+		return unsafe.getByteVolatile(null, pos + addr);
+	}
+
+	int getInt(long pos) {
+		return unsafe.getInt(pos + addr);
+	}
+
+	int getIntVolatile(long pos) {
+		return unsafe.getIntVolatile(null, pos + addr);
+	}
+
+	long getLong(long pos) {
+		return unsafe.getLong(pos + addr);
+	}
+
+	long getLongVolatile(long pos) {
+		return unsafe.getLongVolatile(null, pos + addr);
+	}
+
+	void putByte(long pos, byte val) {
+		unsafe.putByte(pos + addr, val);
+	}
+
+	void putByteVolatile(long pos, byte val) {
+		unsafe.putByteVolatile(null, pos + addr, val);
+	}
+
+	void putInt(long pos, int val) {
+		unsafe.putInt(pos + addr, val);
+	}
+
+	void putIntVolatile(long pos, int val) {
+		unsafe.putIntVolatile(null, pos + addr, val);
+	}
+
+	void putLong(long pos, long val) {
+		unsafe.putLong(pos + addr, val);
+	}
+
+	void putLongVolatile(long pos, long val) {
+		unsafe.putLongVolatile(null, pos + addr, val);
+	}
+
+	void putLongOrdered(long pos, long val) {
+		unsafe.putOrderedLong(null, pos + addr, val);
+	}
+
+	void loadFence() {
+		unsafe.loadFence();
+	}
+
+	void getBytes(long pos, byte[] data, int offset, int length) {
+		unsafe.copyMemory(null, pos + addr, data, BYTE_ARRAY_OFFSET + offset, length);
+	}
+
+	void setBytes(long pos, byte[] data, int offset, int length) {
+		unsafe.copyMemory(data, BYTE_ARRAY_OFFSET + offset, null, pos + addr, length);
+	}
+
+	boolean compareAndSwapInt(long pos, int expected, int value) {
+		return unsafe.compareAndSwapInt(null, pos + addr, expected, value);
+	}
+
+	boolean compareAndSwapLong(long pos, long expected, long value) {
+		return unsafe.compareAndSwapLong(null, pos + addr, expected, value);
+	}
+
+	long getAndAddLong(long pos, long delta) {
+		return unsafe.getAndAddLong(null, pos + addr, delta);
+	}
+}
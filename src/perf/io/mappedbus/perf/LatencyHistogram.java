@@ -0,0 +1,122 @@
+package io.mappedbus.perf;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies in nanoseconds, with a relative error below 1%.
+ *
+ * Values below 128 ns get a bucket each, and larger values are bucketed by their 7 most significant bits,
+ * so the histogram uses a fixed array of counts and recording a value doesn't allocate.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+	private final long[] counts = new long[index(Long.MAX_VALUE) + 1];
+
+	private long count;
+
+	private long max;
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value the value, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[index(value)]++;
+		count++;
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Returns the largest value recorded.
+	 */
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * Returns the value at a percentile, as the highest value in the bucket holding it.
+	 *
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the value, or 0 if no values have been recorded
+	 */
+	public long percentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			total += counts[i];
+			if (total >= target) {
+				return Math.min(highestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		max = 0;
+	}
+
+	/**
+	 * Formats a latency in nanoseconds with a unit keeping it to at most four digits.
+	 *
+	 * @param nanos the latency in nanoseconds
+	 * @return the formatted latency
+	 */
+	public static String format(long nanos) {
+		if (nanos < 10000) {
+			return nanos + "ns";
+		} else if (nanos < 10000000) {
+			return (nanos / 1000) + "us";
+		}
+		return (nanos / 1000000) + "ms";
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + " p50=" + format(percentile(50)) + " p99=" + format(percentile(99))
+				+ " p99.9=" + format(percentile(99.9)) + " max=" + format(max);
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int)value;
+		}
+		int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * HALF_SUB_BUCKETS + (int)(value >>> shift);
+	}
+
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / HALF_SUB_BUCKETS - 1;
+		long subBucket = index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
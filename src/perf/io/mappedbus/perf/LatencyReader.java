@@ -0,0 +1,63 @@
+package io.mappedbus.perf;
+import static io.mappedbus.perf.LatencyHistogram.format;
+import io.mappedbus.MappedBusReader;
+import io.mappedbus.MappedBusRecord;
+
+/**
+ * Reader of the latency benchmark, measuring the end-to-end latency of the records sent by the LatencyWriter.
+ *
+ * For each run the latency is measured from the intended send time (corrected for coordinated omission)
+ * and from the actual send time (uncorrected), and the percentiles of both are printed when the run ends.
+ * The reader should be started before the writer.
+ *
+ * Usage: LatencyReader fileName
+ */
+public class LatencyReader {
+
+	public static void main(String[] args) {
+		LatencyReader reader = new LatencyReader();
+		reader.run(args[0]);
+	}
+
+	public void run(String fileName) {
+		try {
+			MappedBusReader reader = new MappedBusReader(fileName, LatencyWriter.FILE_SIZE, LatencyWriter.MAX_RECORD_SIZE);
+			reader.setSegmented(true);
+			reader.setVariableLength(true);
+			reader.open();
+
+			LatencyHistogram corrected = new LatencyHistogram();
+			LatencyHistogram uncorrected = new LatencyHistogram();
+
+			System.out.println("Waiting for first message");
+			System.out.println(String.format("%-5s %10s %6s %10s %9s %9s %9s %10s | %9s %10s", "run", "msg/s", "bytes", "count",
+					"p50", "p99", "p99.9", "max", "p99(unc)", "max(unc)"));
+
+			while (true) {
+				if (!reader.next()) {
+					continue;
+				}
+				long now = System.nanoTime();
+				MappedBusRecord record = reader.readRecord();
+				int flags = record.getInt(LatencyWriter.FLAGS);
+				if (flags == 0) {
+					corrected.record(now - record.getLong(LatencyWriter.INTENDED_TIME));
+					uncorrected.record(now - record.getLong(LatencyWriter.SEND_TIME));
+				} else if ((flags & LatencyWriter.END_OF_RUN) != 0) {
+					System.out.println(String.format("%-5d %10d %6d %10d %9s %9s %9s %10s | %9s %10s", record.getInt(LatencyWriter.RUN),
+							record.getInt(LatencyWriter.RATE), record.getInt(LatencyWriter.SIZE), corrected.count(),
+							format(corrected.percentile(50)), format(corrected.percentile(99)), format(corrected.percentile(99.9)), format(corrected.max()),
+							format(uncorrected.percentile(99)), format(uncorrected.max())));
+					corrected.reset();
+					uncorrected.reset();
+				} else if ((flags & LatencyWriter.END_OF_BENCHMARK) != 0) {
+					break;
+				}
+			}
+			reader.close();
+			System.out.println("Done");
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package io.mappedbus.perf;
+import io.mappedbus.MappedBusRecord;
+import io.mappedbus.MappedBusWriter;
+
+/**
+ * Writer of the latency benchmark, sending records at fixed rates for the LatencyReader to measure.
+ *
+ * Each combination of message rate and record size is a run. The records of a run are sent on a fixed
+ * schedule, and each record holds the time it was meant to be sent as well as the time it was sent, so
+ * the reader can measure the latency from the intended time. A writer falling behind its schedule then
+ * shows up as latency instead of as fewer samples (coordinated omission). The first second of each run
+ * is flagged as warmup.
+ *
+ * The times are taken with System.nanoTime(), which is comparable between processes on the same machine.
+ *
+ * Usage: LatencyWriter fileName [rates] [sizes] [seconds], for example
+ * "LatencyWriter /tmp/test 10000,100000,1000000 32,256,1024 10".
+ */
+public class LatencyWriter {
+
+	static final long FILE_SIZE = 1L << 30;
+
+	static final int MAX_RECORD_SIZE = 4096;
+
+	static final int INTENDED_TIME = 0;
+
+	static final int SEND_TIME = 8;
+
+	static final int RATE = 16;
+
+	static final int SIZE = 20;
+
+	static final int RUN = 24;
+
+	static final int FLAGS = 28;
+
+	static final int MIN_RECORD_SIZE = 32;
+
+	static final int WARMUP = 1;
+
+	static final int END_OF_RUN = 2;
+
+	static final int END_OF_BENCHMARK = 4;
+
+	private static final long WARMUP_NANOS = 1000000000L;
+
+	public static void main(String[] args) {
+		LatencyWriter writer = new LatencyWriter();
+		long[] rates = parse(args.length > 1 ? args[1] : "10000,100000,1000000");
+		long[] sizes = parse(args.length > 2 ? args[2] : "32,256,1024");
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		writer.run(args[0], rates, sizes, seconds);
+	}
+
+	static long[] parse(String list) {
+		String[] values = list.split(",");
+		long[] result = new long[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = Long.parseLong(values[i].trim());
+		}
+		return result;
+	}
+
+	public void run(String fileName, long[] rates, long[] sizes, int seconds) {
+		try {
+			MappedBusWriter writer = new MappedBusWriter(fileName, FILE_SIZE, MAX_RECORD_SIZE);
+			writer.setSegmented(true);
+			writer.setVariableLength(true);
+			writer.setPretouch(16 * 1024 * 1024);
+			writer.open();
+
+			int run = 0;
+			for (long size : sizes) {
+				if (size < MIN_RECORD_SIZE || size > MAX_RECORD_SIZE) {
+					throw new IllegalArgumentException("The record size must be " + MIN_RECORD_SIZE + " to " + MAX_RECORD_SIZE + ": " + size);
+				}
+				for (long rate : rates) {
+					if (rate < 1 || rate > 1000000000L) {
+						throw new IllegalArgumentException("The rate must be 1 to 1000000000 messages per second: " + rate);
+					}
+					System.out.println("Run " + run + ": " + rate + " msg/s, " + size + " bytes");
+					send(writer, run, rate, (int)size, seconds);
+					run++;
+				}
+			}
+			MappedBusRecord record = writer.tryClaim(MIN_RECORD_SIZE);
+			record.putInt(RUN, run);
+			record.putInt(FLAGS, END_OF_BENCHMARK);
+			writer.commit();
+			writer.close();
+
+			System.out.println("Done");
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void send(MappedBusWriter writer, int run, long rate, int size, int seconds) throws Exception {
+		long interval = 1000000000L / rate;
+		long start = System.nanoTime() + interval;
+		long warmupEnd = start + WARMUP_NANOS;
+		long end = warmupEnd + seconds * 1000000000L;
+		for (long i = 0; ; i++) {
+			long intendedTime = start + i * interval;
+			if (intendedTime >= end) {
+				break;
+			}
+			while (System.nanoTime() < intendedTime) {
+				// spin until the record is due, a writer behind schedule sends right away
+			}
+			MappedBusRecord record = writer.tryClaim(size);
+			record.putLong(INTENDED_TIME, intendedTime);
+			record.putInt(RATE, (int)rate);
+			record.putInt(SIZE, size);
+			record.putInt(RUN, run);
+			record.putInt(FLAGS, intendedTime < warmupEnd ? WARMUP : 0);
+			record.putLong(SEND_TIME, System.nanoTime());
+			writer.commit();
+		}
+		MappedBusRecord record = writer.tryClaim(MIN_RECORD_SIZE);
+		record.putInt(RATE, (int)rate);
+		record.putInt(SIZE, size);
+		record.putInt(RUN, run);
+		record.putInt(FLAGS, END_OF_RUN);
+		writer.commit();
+	}
+}
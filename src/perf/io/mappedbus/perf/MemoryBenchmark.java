@@ -0,0 +1,65 @@
+package io.mappedbus.perf;
+import io.mappedbus.MappedBusReader;
+import io.mappedbus.MappedBusWriter;
+import io.mappedbus.MemoryMappedFile;
+
+import java.io.File;
+
+/**
+ * Compares the memory backends by writing and then reading a number of messages in a single thread.
+ *
+ * The backend is chosen with the system property "mappedbus.memory", so the benchmark is run once
+ * with "-Dmappedbus.memory=unsafe" and once with "-Dmappedbus.memory=varhandle".
+ */
+public class MemoryBenchmark {
+
+	private static final int RECORDS = 10000000;
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		MemoryBenchmark benchmark = new MemoryBenchmark();
+		benchmark.run(args[0]);
+	}
+
+	public void run(String fileName) {
+		try {
+			System.out.println("Backend: " + MemoryMappedFile.backend());
+			for (int round = 0; round < ROUNDS; round++) {
+				new File(fileName).delete();
+				long fileSize = 8 + (long)RECORDS * (8 + 12);
+
+				MappedBusWriter writer = new MappedBusWriter(fileName, fileSize, 12);
+				writer.open();
+				PriceUpdate priceUpdate = new PriceUpdate();
+				long start = System.nanoTime();
+				for (int i = 0; i < RECORDS; i++) {
+					priceUpdate.setSource(i);
+					writer.write(priceUpdate);
+				}
+				long writeTime = System.nanoTime() - start;
+				writer.close();
+
+				MappedBusReader reader = new MappedBusReader(fileName, fileSize, 12);
+				reader.open();
+				long sum = 0;
+				start = System.nanoTime();
+				for (int i = 0; i < RECORDS; i++) {
+					if (!reader.next()) {
+						throw new RuntimeException("Missing record: " + i);
+					}
+					reader.readMessage(priceUpdate);
+					sum += priceUpdate.getSource();
+				}
+				long readTime = System.nanoTime() - start;
+				reader.close();
+
+				System.out.println("Round " + round + ": write " + (writeTime / RECORDS) + "." + (writeTime * 10 / RECORDS % 10) + " ns/op, read "
+						+ (readTime / RECORDS) + "." + (readTime * 10 / RECORDS % 10) + " ns/op (" + sum + ")");
+			}
+			new File(fileName).delete();
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package io.mappedbus.perf;
+import io.mappedbus.MappedBusReader;
+import io.mappedbus.MappedBusWriter;
+
+/**
+ * Round trip benchmark passing a token around a ring of nodes, each running in its own process.
+ *
+ * Node 0 starts each round and measures the round trip time when the token comes back, and every node
+ * measures the latency of the hop which brought it the token. With two nodes this is a ping-pong.
+ *
+ * In "shared" mode all nodes write to and read from one bus, so both directions contend for the same
+ * limit and every node reads every token. In "dedicated" mode each node writes to its own bus, which is
+ * only read by the next node, e.g. a request bus and a response bus for two nodes.
+ *
+ * The nodes can be started in any order, as the readers start from the first record.
+ *
+ * Usage: PingPong id nodes shared|dedicated fileName [rounds] [warmupRounds], for example
+ * "PingPong 0 2 dedicated /tmp/pingpong" and "PingPong 1 2 dedicated /tmp/pingpong".
+ */
+public class PingPong {
+
+	private static final long FILE_SIZE = 64L * 1024 * 1024;
+
+	public static void main(String[] args) {
+		int id = Integer.parseInt(args[0]);
+		int nodes = Integer.parseInt(args[1]);
+		boolean shared;
+		if (args[2].equals("shared")) {
+			shared = true;
+		} else if (args[2].equals("dedicated")) {
+			shared = false;
+		} else {
+			throw new IllegalArgumentException("The mode must be shared or dedicated: " + args[2]);
+		}
+		String fileName = args[3];
+		long rounds = args.length > 4 ? Long.parseLong(args[4]) : 1000000;
+		long warmupRounds = args.length > 5 ? Long.parseLong(args[5]) : 100000;
+		if (nodes < 2 || id < 0 || id >= nodes) {
+			throw new IllegalArgumentException("There must be at least 2 nodes, with ids from 0");
+		}
+		PingPong pingPong = new PingPong();
+		pingPong.run(id, nodes, shared, fileName, rounds, warmupRounds);
+	}
+
+	public void run(int id, int nodes, boolean shared, String fileName, long rounds, long warmupRounds) {
+		try {
+			String writerFile = shared ? fileName : fileName + "-" + id;
+			String readerFile = shared ? fileName : fileName + "-" + ((id + nodes - 1) % nodes);
+
+			MappedBusWriter writer = new MappedBusWriter(writerFile, FILE_SIZE, PingTokenCodec.RECORD_SIZE);
+			writer.setSegmented(true);
+			writer.open();
+
+			MappedBusReader reader = new MappedBusReader(readerFile, FILE_SIZE, PingTokenCodec.RECORD_SIZE);
+			reader.setSegmented(true);
+			reader.open();
+
+			LatencyHistogram hops = new LatencyHistogram();
+			LatencyHistogram roundTrips = new LatencyHistogram();
+			PingToken token = new PingToken();
+			long total = warmupRounds + rounds;
+			int next = (id + 1) % nodes;
+
+			if (id == 0) {
+				long now = System.nanoTime();
+				send(writer, token, 0, now, now, id, next);
+			}
+
+			long received = 0;
+			while (received < total) {
+				if (!reader.next()) {
+					continue;
+				}
+				reader.readMessage(token);
+				if (token.to != id) {
+					continue;
+				}
+				long now = System.nanoTime();
+				received++;
+				long round = token.round;
+				if (round >= warmupRounds) {
+					hops.record(now - token.sendTime);
+					if (id == 0) {
+						roundTrips.record(now - token.roundStartTime);
+					}
+				}
+				if (id == 0) {
+					if (round + 1 < total) {
+						now = System.nanoTime();
+						send(writer, token, round + 1, now, now, id, next);
+					}
+				} else {
+					send(writer, token, round, token.roundStartTime, System.nanoTime(), id, next);
+				}
+			}
+
+			System.out.println("Node " + id + " (" + (shared ? "shared" : "dedicated") + " bus, " + nodes + " nodes, " + rounds + " rounds)");
+			System.out.println("Hop latency:        " + hops);
+			if (id == 0) {
+				System.out.println("Round trip latency: " + roundTrips);
+			}
+
+			reader.close();
+			writer.close();
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void send(MappedBusWriter writer, PingToken token, long round, long roundStartTime, long sendTime, int from, int to) throws Exception {
+		token.round = round;
+		token.roundStartTime = roundStartTime;
+		token.sendTime = sendTime;
+		token.from = from;
+		token.to = to;
+		writer.write(token);
+	}
+}
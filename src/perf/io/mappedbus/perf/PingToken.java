@@ -0,0 +1,33 @@
+package io.mappedbus.perf;
+import io.mappedbus.MappedBusCodec;
+import io.mappedbus.MappedBusMessage;
+import io.mappedbus.MemoryMappedFile;
+
+/**
+ * The token passed around by PingPong, holding the round it belongs to and the times it was sent.
+ */
+@MappedBusCodec(type = 0)
+public class PingToken implements MappedBusMessage {
+
+	long round;
+
+	long roundStartTime;
+
+	long sendTime;
+
+	int from;
+
+	int to;
+
+	public int type() {
+		return PingTokenCodec.TYPE;
+	}
+
+	public void write(MemoryMappedFile mem, long pos) {
+		PingTokenCodec.write(this, mem, pos);
+	}
+
+	public void read(MemoryMappedFile mem, long pos) {
+		PingTokenCodec.read(this, mem, pos);
+	}
+}
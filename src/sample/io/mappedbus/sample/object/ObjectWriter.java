@@ -10,7 +10,7 @@ public class ObjectWriter {
 
 	public void run(int source) {
 		try {
-			MappedBusWriter writer = new MappedBusWriter("/tmp/test-message", 2000000L, 12);
+			MappedBusWriter writer = new MappedBusWriter("/tmp/test-message", 2000000L, PriceUpdateCodec.RECORD_SIZE);
 			writer.open();
 			
 			PriceUpdate priceUpdate = new PriceUpdate();
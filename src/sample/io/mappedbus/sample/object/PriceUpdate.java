@@ -1,11 +1,13 @@
 package io.mappedbus.sample.object;
+import io.mappedbus.MappedBusCodec;
 import io.mappedbus.MemoryMappedFile;
 import io.mappedbus.MappedBusMessage;
 
 
+@MappedBusCodec(type = 0)
 public class PriceUpdate implements MappedBusMessage {
 	
-	public static final int TYPE = 0;
+	public static final int TYPE = PriceUpdateCodec.TYPE;
 
 	private int source;
 	
@@ -56,15 +58,11 @@ public class PriceUpdate implements MappedBusMessage {
 	}
 	
 	public void write(MemoryMappedFile mem, long pos) {
-		mem.putInt(pos, source);
-		mem.putInt(pos + 4, price);
-		mem.putInt(pos + 8, quantity);
+		PriceUpdateCodec.write(this, mem, pos);
 	}
 	
 	public void read(MemoryMappedFile mem, long pos) {
-		source = mem.getInt(pos);
-		price = mem.getInt(pos + 4);
-		quantity = mem.getInt(pos + 8);
+		PriceUpdateCodec.read(this, mem, pos);
 	}
 
 }
\ No newline at end of file
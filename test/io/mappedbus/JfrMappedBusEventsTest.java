@@ -0,0 +1,156 @@
+package io.mappedbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import io.mappedbus.MappedBusConstants.Length;
+import io.mappedbus.MappedBusConstants.Structure;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests the events recorded by JfrMappedBusEvents.
+ *
+ */
+public class JfrMappedBusEventsTest {
+
+	public static final String FILE_NAME = "/tmp/JfrMappedBusEventsTest";
+
+	public static final long FILE_SIZE = 1000;
+
+	public static final int RECORD_SIZE = 8;
+
+	public static final int ENTRY_SIZE = RECORD_SIZE + Length.RecordHeader;
+
+	@Before public void before() {
+		new File(FILE_NAME).delete();
+	}
+
+	@After public void after() {
+		new File(FILE_NAME).delete();
+	}
+
+	@Test public void testEvents() throws Exception {
+		assertTrue(MappedBusEvents.EVENTS instanceof JfrMappedBusEvents);
+
+		Recording recording = new Recording();
+		recording.enable("io.mappedbus.SlowWrite");
+		recording.enable("io.mappedbus.CommitStall");
+		recording.enable("io.mappedbus.Rollback");
+		recording.start();
+
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setTimeout(50);
+		reader.open();
+
+		// a message write slower than the threshold
+		writer.write(new SlowMessage());
+		assertEquals(true, reader.next());
+
+		// a record committed after the reader waited for it
+		writer.tryClaim(RECORD_SIZE);
+		waitFor(reader, 20);
+		writer.commit();
+		assertEquals(true, reader.next());
+
+		// a record aborted by its writer
+		writer.tryClaim(RECORD_SIZE);
+		writer.abort();
+		assertEquals(false, reader.next());
+
+		// a record rolled back by the reader after the timeout
+		writer.tryClaim(RECORD_SIZE);
+		waitFor(reader, 200);
+		assertEquals(false, writer.commit());
+
+		recording.stop();
+		Path file = Files.createTempFile("JfrMappedBusEventsTest", ".jfr");
+		List<RecordedEvent> events;
+		try {
+			recording.dump(file);
+			events = RecordingFile.readAllEvents(file);
+		} finally {
+			recording.close();
+			Files.delete(file);
+		}
+
+		RecordedEvent slowWrite = find(events, "io.mappedbus.SlowWrite", null);
+		assertEquals(FILE_NAME, slowWrite.getString("bus"));
+		assertEquals(0, slowWrite.getLong("segment"));
+		assertEquals(Structure.Data, slowWrite.getLong("position"));
+		assertEquals(SlowMessage.TYPE, slowWrite.getInt("messageType"));
+		assertTrue(slowWrite.getDuration("writeTime").toMillis() >= 1);
+
+		RecordedEvent commitStall = find(events, "io.mappedbus.CommitStall", null);
+		assertEquals(FILE_NAME, commitStall.getString("bus"));
+		assertEquals(0, commitStall.getLong("segment"));
+		assertEquals(Structure.Data + ENTRY_SIZE, commitStall.getLong("position"));
+		assertTrue(commitStall.getDuration("waited").toMillis() >= 1);
+
+		RecordedEvent abort = find(events, "io.mappedbus.Rollback", "writer");
+		assertEquals(FILE_NAME, abort.getString("bus"));
+		assertEquals(Structure.Data + 2 * ENTRY_SIZE, abort.getLong("position"));
+		assertEquals(0, abort.getDuration("waited").toMillis());
+
+		RecordedEvent rollback = find(events, "io.mappedbus.Rollback", "reader");
+		assertEquals(FILE_NAME, rollback.getString("bus"));
+		assertEquals(Structure.Data + 3 * ENTRY_SIZE, rollback.getLong("position"));
+		assertTrue(rollback.getDuration("waited").toMillis() >= 50);
+
+		reader.close();
+		writer.close();
+	}
+
+	private static void waitFor(MappedBusReader reader, long time) throws Exception {
+		long end = System.currentTimeMillis() + time;
+		while (System.currentTimeMillis() < end) {
+			assertEquals(false, reader.next());
+		}
+	}
+
+	private static RecordedEvent find(List<RecordedEvent> events, String name, String performer) {
+		RecordedEvent found = null;
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(name) && (performer == null || performer.equals(event.getString("performer")))) {
+				assertEquals(null, found);
+				found = event;
+			}
+		}
+		assertNotNull(found);
+		return found;
+	}
+
+	static class SlowMessage implements MappedBusMessage {
+
+		static final int TYPE = 7;
+
+		public int type() {
+			return TYPE;
+		}
+
+		public void write(MemoryMappedFile mem, long pos) {
+			try {
+				Thread.sleep(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			mem.putLong(pos, 42);
+		}
+
+		public void read(MemoryMappedFile mem, long pos) {
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package io.mappedbus;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests the codecs generated for messages annotated with MappedBusCodec.
+ *
+ */
+public class MappedBusCodecTest {
+
+	public static final String FILE_NAME = "/tmp/MappedBusCodecTest";
+
+	public static final long FILE_SIZE = 1000;
+
+	@Before public void before() {
+		new File(FILE_NAME).delete();
+	}
+
+	@After public void after() {
+		new File(FILE_NAME).delete();
+	}
+
+	@Test public void testLayout() {
+		assertEquals(5, MappedBusCodecTestQuoteCodec.TYPE);
+		assertEquals(0, MappedBusCodecTestQuoteCodec.TIME_OFFSET);
+		assertEquals(8, MappedBusCodecTestQuoteCodec.BID_PRICE_OFFSET);
+		assertEquals(16, MappedBusCodecTestQuoteCodec.SIZE_OFFSET);
+		assertEquals(20, MappedBusCodecTestQuoteCodec.RATE_OFFSET);
+		assertEquals(24, MappedBusCodecTestQuoteCodec.SIDE_OFFSET);
+		assertEquals(25, MappedBusCodecTestQuoteCodec.FIRM_OFFSET);
+		assertEquals(32, MappedBusCodecTestQuoteCodec.RECORD_SIZE);
+	}
+
+	@Test public void testWriteRead() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, MappedBusCodecTestQuoteCodec.RECORD_SIZE);
+		writer.open();
+		writer.write(new Quote((byte)1, 1000L, 1.5, 10, 0.25f, true));
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, MappedBusCodecTestQuoteCodec.RECORD_SIZE);
+		reader.open();
+		assertEquals(true, reader.next());
+		assertEquals(Quote.TYPE, reader.readType());
+		Quote quote = new Quote();
+		reader.readMessage(quote);
+		assertEquals(1, quote.side);
+		assertEquals(1000L, quote.time);
+		assertEquals(1.5, quote.bidPrice, 0);
+		assertEquals(10, quote.size);
+		assertEquals(0.25f, quote.getRate(), 0);
+		assertEquals(true, quote.isFirm());
+	}
+
+	@Test public void testRecord() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, MappedBusCodecTestQuoteCodec.RECORD_SIZE);
+		writer.open();
+		MappedBusRecord record = writer.tryClaim(MappedBusCodecTestQuoteCodec.RECORD_SIZE);
+		MappedBusCodecTestQuoteCodec.putSide(record, (byte)-1);
+		MappedBusCodecTestQuoteCodec.putTime(record, 2000L);
+		MappedBusCodecTestQuoteCodec.putBidPrice(record, -2.5);
+		MappedBusCodecTestQuoteCodec.putSize(record, 20);
+		MappedBusCodecTestQuoteCodec.putRate(record, 0.5f);
+		MappedBusCodecTestQuoteCodec.putFirm(record, false);
+		writer.commit();
+		writer.write(new Quote((byte)1, 3000L, 3.5, 30, 0.75f, true));
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, MappedBusCodecTestQuoteCodec.RECORD_SIZE);
+		reader.open();
+		assertEquals(true, reader.next());
+		Quote quote = new Quote();
+		reader.readMessage(quote);
+		assertEquals(-1, quote.side);
+		assertEquals(2000L, quote.time);
+		assertEquals(-2.5, quote.bidPrice, 0);
+		assertEquals(20, quote.size);
+		assertEquals(0.5f, quote.getRate(), 0);
+		assertEquals(false, quote.isFirm());
+
+		assertEquals(true, reader.next());
+		record = reader.readRecord();
+		assertEquals(Quote.TYPE, record.type());
+		assertEquals(1, MappedBusCodecTestQuoteCodec.getSide(record));
+		assertEquals(3000L, MappedBusCodecTestQuoteCodec.getTime(record));
+		assertEquals(3.5, MappedBusCodecTestQuoteCodec.getBidPrice(record), 0);
+		assertEquals(30, MappedBusCodecTestQuoteCodec.getSize(record));
+		assertEquals(0.75f, MappedBusCodecTestQuoteCodec.getRate(record), 0);
+		assertEquals(true, MappedBusCodecTestQuoteCodec.getFirm(record));
+	}
+
+	@MappedBusCodec(type = 5)
+	static class Quote implements MappedBusMessage {
+
+		static final int TYPE = MappedBusCodecTestQuoteCodec.TYPE;
+
+		byte side;
+
+		long time;
+
+		int size;
+
+		private boolean firm;
+
+		double bidPrice;
+
+		private float rate;
+
+		transient int ignored;
+
+		Quote() {
+		}
+
+		Quote(byte side, long time, double bidPrice, int size, float rate, boolean firm) {
+			this.side = side;
+			this.time = time;
+			this.bidPrice = bidPrice;
+			this.size = size;
+			this.rate = rate;
+			this.firm = firm;
+		}
+
+		boolean isFirm() {
+			return firm;
+		}
+
+		void setFirm(boolean firm) {
+			this.firm = firm;
+		}
+
+		float getRate() {
+			return rate;
+		}
+
+		void setRate(float rate) {
+			this.rate = rate;
+		}
+
+		public int type() {
+			return TYPE;
+		}
+
+		public void write(MemoryMappedFile mem, long pos) {
+			MappedBusCodecTestQuoteCodec.write(this, mem, pos);
+		}
+
+		public void read(MemoryMappedFile mem, long pos) {
+			MappedBusCodecTestQuoteCodec.read(this, mem, pos);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package io.mappedbus;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests MappedBusCoordinator and the coordinated readers.
+ *
+ */
+public class MappedBusCoordinatorTest {
+
+	public static final String FILE_NAME = "/tmp/MappedBusCoordinatorTest";
+
+	public static final long FILE_SIZE = 1000;
+
+	public static final int RECORD_SIZE = 12;
+
+	@Before public void before() {
+		new File(FILE_NAME).delete();
+	}
+
+	@After public void after() {
+		new File(FILE_NAME).delete();
+	}
+
+	@Test public void testCoordinatedReader() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setCoordinated(true);
+		reader.setTimeout(0);
+		reader.open();
+
+		// a coordinated reader never rolls back a record itself
+		writer.tryClaim(RECORD_SIZE);
+		for (int i = 0; i < 10 * MappedBusReader.MAX_TIMEOUT_COUNT; i++) {
+			assertEquals(false, reader.next());
+		}
+		assertEquals(true, writer.commit());
+		assertEquals(true, reader.next());
+
+		reader.close();
+		writer.close();
+	}
+
+	@Test public void testRollback() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setCoordinated(true);
+		reader.open();
+
+		MappedBusReader coordinatorReader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		coordinatorReader.setTimeout(100);
+		coordinatorReader.open();
+		final MappedBusCoordinator coordinator = new MappedBusCoordinator(coordinatorReader);
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					coordinator.run(new MappedBusWaitStrategy.Park(1, 1000));
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		thread.start();
+
+		byte[] buffer = new byte[RECORD_SIZE];
+		writer.write(buffer, 0, RECORD_SIZE);
+		writer.tryClaim(RECORD_SIZE);
+		writer.write(buffer, 0, RECORD_SIZE);
+
+		// the reader gets past the claimed record once the coordinator has rolled it back
+		int records = 0;
+		long start = System.currentTimeMillis();
+		while (records < 2 && System.currentTimeMillis() - start < 5000) {
+			if (reader.next()) {
+				records++;
+			}
+		}
+		assertEquals(2, records);
+		assertEquals(false, writer.commit());
+
+		coordinator.stop();
+		thread.join();
+		coordinatorReader.close();
+		reader.close();
+		writer.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCoordinatedCoordinator() throws Exception {
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setCoordinated(true);
+		new MappedBusCoordinator(reader);
+	}
+}
@@ -0,0 +1,133 @@
+package io.mappedbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests MappedBusDispatcher.
+ *
+ */
+public class MappedBusDispatcherTest {
+
+	public static final String FILE_NAME = "/tmp/MappedBusDispatcherTest";
+
+	public static final long FILE_SIZE = 1000;
+
+	public static final int RECORD_SIZE = 12;
+
+	@Before public void before() {
+		new File(FILE_NAME).delete();
+	}
+
+	@After public void after() {
+		new File(FILE_NAME).delete();
+	}
+
+	@Test public void testDispatch() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		writer.write(new Counter(1, 1));
+		writer.write(new Counter(3, 2));
+		writer.write(new Counter(1, 3));
+		writer.write(new Counter(7, 4));
+		writer.write(new Counter(3, 5));
+
+		final Counter one = new Counter(1, 0);
+		final Counter three = new Counter(3, 0);
+		final List<Integer> values = new ArrayList<Integer>();
+		MappedBusDispatcher dispatcher = new MappedBusDispatcher();
+		dispatcher.register(one, new MappedBusDispatcher.Handler<Counter>() {
+			public void onMessage(Counter message) {
+				assertSame(one, message);
+				values.add(message.value);
+			}
+		});
+		dispatcher.register(three, new MappedBusDispatcher.Handler<Counter>() {
+			public void onMessage(Counter message) {
+				assertSame(three, message);
+				values.add(-message.value);
+			}
+		});
+		final List<Integer> unknown = new ArrayList<Integer>();
+		dispatcher.setDefaultHandler(new MappedBusHandler() {
+			public void onRecord(MappedBusReader reader) {
+				unknown.add(reader.readMessage(new Counter(0, 0)).type());
+			}
+		});
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.open();
+		assertEquals(5, reader.poll(dispatcher, 10));
+		assertEquals(Arrays.asList(1, -2, 3, -5), values);
+		assertEquals(1, unknown.size());
+	}
+
+	@Test public void testRun() throws Exception {
+		final MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+
+		final MappedBusDispatcher dispatcher = new MappedBusDispatcher();
+		final List<Integer> values = new ArrayList<Integer>();
+		dispatcher.register(new Counter(1, 0), new MappedBusDispatcher.Handler<Counter>() {
+			public void onMessage(Counter message) {
+				values.add(message.value);
+				if (message.value == 3) {
+					dispatcher.stop();
+				}
+			}
+		});
+
+		Thread writerThread = new Thread() {
+			public void run() {
+				try {
+					for (int i = 1; i <= 3; i++) {
+						Thread.sleep(10);
+						writer.write(new Counter(1, i));
+					}
+				} catch(Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		writerThread.start();
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.open();
+		dispatcher.run(reader, new MappedBusWaitStrategy.Park(1, 1000));
+		assertEquals(Arrays.asList(1, 2, 3), values);
+		writerThread.join();
+	}
+
+	class Counter implements MappedBusMessage {
+
+		private final int type;
+
+		private int value;
+
+		public Counter(int type, int value) {
+			this.type = type;
+			this.value = value;
+		}
+
+		public int type() {
+			return type;
+		}
+
+		public void write(MemoryMappedFile mem, long pos) {
+			mem.putInt(pos, value);
+		}
+
+		public void read(MemoryMappedFile mem, long pos) {
+			value = mem.getInt(pos);
+		}
+	}
+}
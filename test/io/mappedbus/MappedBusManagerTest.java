@@ -0,0 +1,160 @@
+package io.mappedbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import io.mappedbus.MappedBusConstants.TopicFlag;
+import io.mappedbus.MappedBusConstants.TopicLength;
+import io.mappedbus.MappedBusConstants.TopicState;
+import io.mappedbus.MappedBusConstants.TopicStructure;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests MappedBusManager.
+ *
+ */
+public class MappedBusManagerTest {
+
+	public static final String DIRECTORY_NAME = "/tmp/MappedBusManagerTest";
+
+	public static final long FILE_SIZE = 1000;
+
+	public static final int RECORD_SIZE = 12;
+
+	@Before public void before() {
+		deleteFiles();
+	}
+
+	@After public void after() {
+		deleteFiles();
+	}
+
+	private void deleteFiles() {
+		new File(DIRECTORY_NAME).delete();
+		new File("/tmp/prices").delete();
+		new File(MappedBusFiles.segment("/tmp/orders", 0)).delete();
+	}
+
+	@Test public void testTopics() throws Exception {
+		MappedBusManager manager = new MappedBusManager(DIRECTORY_NAME);
+		manager.open();
+		manager.createTopic("prices", FILE_SIZE, RECORD_SIZE, 0);
+		manager.createTopic("orders", FILE_SIZE, RECORD_SIZE, TopicFlag.Segmented | TopicFlag.VariableLength);
+
+		// defining a topic again is fine as long as the layout is the same
+		manager.createTopic("prices", FILE_SIZE, RECORD_SIZE, 0);
+		try {
+			manager.createTopic("prices", FILE_SIZE, RECORD_SIZE + 1, 0);
+			fail();
+		} catch (IOException e) {
+			// the record size differs
+		}
+		try {
+			manager.createWriter("trades");
+			fail();
+		} catch (IOException e) {
+			// the topic is not defined
+		}
+		try {
+			manager.createTopic("../prices", FILE_SIZE, RECORD_SIZE, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// the topic name must not be a path
+		}
+
+		// another process only needs the names
+		MappedBusManager other = new MappedBusManager(DIRECTORY_NAME);
+		other.open();
+		MappedBusWriter writer = other.createWriter("orders");
+		writer.open();
+		writer.write(new byte[] {1, 2, 3}, 0, 3);
+		writer.close();
+
+		MappedBusReader reader = manager.createReader("orders");
+		reader.open();
+		assertEquals(true, reader.next());
+		assertEquals(3, reader.readBuffer(new byte[RECORD_SIZE], 0));
+		reader.close();
+		other.close();
+		manager.close();
+	}
+
+	@Test public void testAbandonedEntry() throws Exception {
+		// a process crashed after claiming the first entry for a topic
+		MemoryMappedFile directory = new MemoryMappedFile(DIRECTORY_NAME, TopicLength.Directory);
+		directory.putInt(TopicStructure.NameLength, 6);
+		directory.setBytes(TopicStructure.Name, "prices".getBytes("UTF-8"), 0, 6);
+		directory.putIntVolatile(TopicStructure.State, TopicState.Claimed);
+
+		MappedBusManager manager = new MappedBusManager(DIRECTORY_NAME);
+		manager.open();
+		manager.createTopic("prices", FILE_SIZE, RECORD_SIZE, 0);
+		assertEquals(TopicState.Abandoned, directory.getIntVolatile(TopicStructure.State));
+		assertEquals(TopicState.Active, directory.getIntVolatile(TopicLength.Topic + TopicStructure.State));
+
+		MappedBusWriter writer = manager.createWriter("prices");
+		writer.open();
+		writer.write(new byte[] {1, 2, 3}, 0, 3);
+		writer.close();
+		manager.close();
+		directory.unmap();
+	}
+
+	@Test public void testSharedMappings() throws Exception {
+		int mapped = MappedBusManager.mappedFiles();
+		MappedBusManager manager = new MappedBusManager(DIRECTORY_NAME);
+		manager.open();
+		manager.createTopic("prices", FILE_SIZE, RECORD_SIZE, 0);
+
+		MappedBusWriter writer = manager.createWriter("prices");
+		writer.open();
+		MappedBusReader reader1 = manager.createReader("prices");
+		reader1.open();
+		MappedBusReader reader2 = manager.createReader("prices");
+		reader2.open();
+		assertEquals(mapped + 2, MappedBusManager.mappedFiles());
+
+		writer.write(new byte[] {1, 2, 3}, 0, 3);
+		assertEquals(true, reader1.next());
+		assertEquals(true, reader2.next());
+
+		writer.close();
+		reader1.close();
+		assertEquals(mapped + 2, MappedBusManager.mappedFiles());
+		reader2.close();
+		assertEquals(mapped + 1, MappedBusManager.mappedFiles());
+		manager.close();
+		assertEquals(mapped, MappedBusManager.mappedFiles());
+	}
+
+	@Test public void testSharedMappingsBetweenManagers() throws Exception {
+		int mapped = MappedBusManager.mappedFiles();
+		MappedBusManager manager = new MappedBusManager(DIRECTORY_NAME);
+		manager.open();
+		manager.createTopic("prices", FILE_SIZE, RECORD_SIZE, 0);
+		MappedBusWriter writer = manager.createWriter("prices");
+		writer.open();
+
+		// the same directory through another path shares the mappings of the first manager
+		MappedBusManager other = new MappedBusManager("/tmp/../tmp/MappedBusManagerTest");
+		other.open();
+		MappedBusReader reader = other.createReader("prices");
+		reader.open();
+		assertEquals(mapped + 2, MappedBusManager.mappedFiles());
+
+		writer.write(new byte[] {1, 2, 3}, 0, 3);
+		assertEquals(true, reader.next());
+
+		reader.close();
+		other.close();
+		assertEquals(mapped + 2, MappedBusManager.mappedFiles());
+		writer.close();
+		manager.close();
+		assertEquals(mapped, MappedBusManager.mappedFiles());
+	}
+}
@@ -0,0 +1,126 @@
+package io.mappedbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import io.mappedbus.MappedBusConstants.Length;
+import io.mappedbus.MappedBusConstants.MetricsCounter;
+import io.mappedbus.MappedBusConstants.MetricsType;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests the metrics counters and MappedBusMonitor.
+ *
+ */
+public class MappedBusMonitorTest {
+
+	public static final String FILE_NAME = "/tmp/MappedBusMonitorTest";
+
+	public static final long FILE_SIZE = 1000;
+
+	public static final int RECORD_SIZE = 12;
+
+	@Before public void before() {
+		deleteFiles();
+	}
+
+	@After public void after() {
+		deleteFiles();
+	}
+
+	private void deleteFiles() {
+		new File(FILE_NAME).delete();
+		new File(MappedBusFiles.metrics(FILE_NAME)).delete();
+	}
+
+	@Test public void testCounters() throws Exception {
+		MappedBusMonitor monitor = new MappedBusMonitor(FILE_NAME);
+		try {
+			monitor.open();
+			fail();
+		} catch (IOException e) {
+			// no writer or reader with metrics has been opened
+		}
+
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.setMetrics(true);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setMetrics(true);
+		reader.setTimeout(0);
+		reader.open();
+		monitor.open();
+		assertEquals(1, monitor.count(MetricsType.Writer));
+		assertEquals(1, monitor.count(MetricsType.Reader));
+		assertEquals(RECORD_SIZE + Length.RecordHeader, monitor.entrySize());
+
+		byte[] buffer = new byte[RECORD_SIZE];
+		writer.write(buffer, 0, RECORD_SIZE);
+		writer.write(buffer, 0, RECORD_SIZE);
+		writer.tryClaim(RECORD_SIZE);
+		writer.abort();
+		assertEquals(3 * monitor.entrySize(), monitor.lag());
+
+		assertEquals(true, reader.next());
+		assertEquals(true, reader.next());
+		assertEquals(false, reader.next());
+		assertEquals(false, reader.next());
+		assertEquals(0, monitor.lag());
+
+		// the reader times out on a claimed record and rolls it back, so the commit fails
+		writer.tryClaim(RECORD_SIZE);
+		while (reader.next() || monitor.get(MetricsCounter.TimedOut) == 0) {
+		}
+		assertEquals(false, writer.commit());
+
+		assertEquals(4, monitor.get(MetricsCounter.Written));
+		assertEquals(2, monitor.get(MetricsCounter.Committed));
+		assertEquals(1, monitor.get(MetricsCounter.CommitFailed));
+		assertEquals(1, monitor.get(MetricsCounter.Aborted));
+		assertEquals(2, monitor.get(MetricsCounter.Read));
+		assertEquals(1, monitor.get(MetricsCounter.Skipped));
+		assertEquals(1, monitor.get(MetricsCounter.TimedOut));
+		assertEquals(0, monitor.get(MetricsCounter.EndOfFile));
+
+		// the counters are kept when a slot is released and taken over by a new writer
+		writer.close();
+		assertEquals(0, monitor.count(MetricsType.Writer));
+		writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.setMetrics(true);
+		writer.open();
+		writer.write(buffer, 0, RECORD_SIZE);
+		assertEquals(5, monitor.get(MetricsCounter.Written));
+		assertEquals(3, monitor.get(MetricsCounter.Committed));
+
+		writer.close();
+		reader.close();
+		assertEquals(0, monitor.count(MetricsType.Reader));
+		monitor.close();
+	}
+
+	@Test public void testEndOfFile() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, 8 + 2 * (RECORD_SIZE + Length.RecordHeader), RECORD_SIZE);
+		writer.setMetrics(true);
+		writer.open();
+		byte[] buffer = new byte[RECORD_SIZE];
+		writer.write(buffer, 0, RECORD_SIZE);
+		writer.write(buffer, 0, RECORD_SIZE);
+		try {
+			writer.write(buffer, 0, RECORD_SIZE);
+			fail();
+		} catch (IOException e) {
+			// the file is full
+		}
+		MappedBusMonitor monitor = new MappedBusMonitor(FILE_NAME);
+		monitor.open();
+		assertEquals(1, monitor.get(MetricsCounter.EndOfFile));
+		assertEquals(2, monitor.get(MetricsCounter.Committed));
+		monitor.close();
+		writer.close();
+	}
+}
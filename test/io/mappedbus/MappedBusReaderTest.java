@@ -3,12 +3,17 @@ package io.mappedbus;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import io.mappedbus.MappedBusConstants.StatusFlag;
 import io.mappedbus.MappedBusConstants.Length;
+import io.mappedbus.MappedBusConstants.PaddedStructure;
 import io.mappedbus.MappedBusConstants.Structure;
 
 import java.io.EOFException;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -27,11 +32,20 @@ public class MappedBusReaderTest {
 	public static final int RECORD_SIZE = 12;
 	
 	@Before public void before() {
-		new File(FILE_NAME).delete();
+		deleteFiles();
 	}
 	
 	@After public void after() {
+		deleteFiles();
+	}
+
+	private void deleteFiles() {
 		new File(FILE_NAME).delete();
+		for (int i = 0; i < 10; i++) {
+			new File(MappedBusFiles.segment(FILE_NAME, i)).delete();
+		}
+		new File(MappedBusFiles.offsets(FILE_NAME)).delete();
+		new File(MappedBusFiles.index(FILE_NAME)).delete();
 	}
 	
 	@Test public void testReadEmptyFile() throws Exception {
@@ -221,6 +235,774 @@ public class MappedBusReaderTest {
 		assertEquals(true, reader.hasRecovered());
 	}
 	
+	@Test public void testReadSegmented() throws Exception {
+		int fileSize = Length.Limit + 2 * (Length.RecordHeader + RECORD_SIZE);
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setSegmented(true);
+		writer.open();
+
+		for (int i = 0; i < 5; i++) {
+			writer.write(new PriceUpdate(i, i + 1, i + 2));
+		}
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, RECORD_SIZE);
+		reader.setSegmented(true);
+		reader.open();
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		for (int i = 0; i < 5; i++) {
+			assertEquals(true, reader.next());
+			assertEquals(false, reader.hasRecovered());
+			reader.readMessage(priceUpdate);
+			assertEquals(i, priceUpdate.getSource());
+			assertEquals(i + 1, priceUpdate.getPrice());
+			assertEquals(i + 2, priceUpdate.getQuantity());
+		}
+		assertEquals(false, reader.next());
+		assertEquals(true, reader.hasRecovered());
+
+		// the reader follows the writer into the next segment
+		writer.write(new PriceUpdate(5, 6, 7));
+		writer.write(new PriceUpdate(8, 9, 10));
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(5, priceUpdate.getSource());
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(8, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testReadVariableLength() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, 100);
+		writer.setVariableLength(true);
+		writer.open();
+
+		byte[] data1 = {0, 1, 2, 3};
+		writer.write(data1, 0, data1.length);
+		writer.write(new PriceUpdate(3, 4, 5), RECORD_SIZE);
+		byte[] data2 = new byte[50];
+		data2[49] = 7;
+		writer.write(data2, 0, data2.length);
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, 100);
+		reader.setVariableLength(true);
+		reader.open();
+
+		byte[] buffer = new byte[100];
+		assertEquals(true, reader.next());
+		assertEquals(4, reader.readBuffer(buffer, 0));
+		assertEquals(3, buffer[3]);
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		assertEquals(true, reader.next());
+		assertEquals(PriceUpdate.TYPE, reader.readType());
+		reader.readMessage(priceUpdate);
+		assertEquals(3, priceUpdate.getSource());
+		assertEquals(4, priceUpdate.getPrice());
+		assertEquals(5, priceUpdate.getQuantity());
+
+		assertEquals(true, reader.next());
+		assertEquals(50, reader.readBuffer(buffer, 0));
+		assertEquals(7, buffer[49]);
+
+		assertEquals(false, reader.next());
+		assertEquals(true, reader.hasRecovered());
+	}
+
+	@Test public void testReadVariableLengthRollback() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, 100);
+		writer.setVariableLength(true);
+		writer.open();
+
+		// the first record is never committed
+		writer.writeRecord(new byte[30], 0, 30);
+		writer.write(new PriceUpdate(3, 4, 5), RECORD_SIZE);
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, 100);
+		reader.setVariableLength(true);
+		reader.setTimeout(0);
+		reader.open();
+
+		for (int i = 0; i < MappedBusReader.MAX_TIMEOUT_COUNT + 1; i++) {
+			assertEquals(false, reader.next());
+		}
+		PriceUpdate priceUpdate = new PriceUpdate();
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(3, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testReadVariableLengthSegmented() throws Exception {
+		int fileSize = Length.Limit + 64;
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, 100);
+		writer.setVariableLength(true);
+		writer.setSegmented(true);
+		writer.open();
+
+		// 40 bytes each, so the rest of each segment is padded
+		byte[] data = new byte[25];
+		for (int i = 0; i < 3; i++) {
+			data[0] = (byte)i;
+			writer.write(data, 0, data.length);
+		}
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, 100);
+		reader.setVariableLength(true);
+		reader.setSegmented(true);
+		reader.open();
+
+		byte[] buffer = new byte[100];
+		for (int i = 0; i < 3; i++) {
+			while (!reader.next()) {
+			}
+			assertEquals(25, reader.readBuffer(buffer, 0));
+			assertEquals(i, buffer[0]);
+		}
+		assertEquals(false, reader.next());
+		assertEquals(true, reader.hasRecovered());
+	}
+
+	@Test public void testReadPadded() throws Exception {
+		int fileSize = PaddedStructure.Data + 2 * (Length.RecordHeader + RECORD_SIZE);
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setPadded(true);
+		writer.setSegmented(true);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, RECORD_SIZE);
+		reader.setPadded(true);
+		reader.setSegmented(true);
+		reader.setTimeout(0);
+		reader.open();
+
+		// a claimed record isn't published until it's committed
+		long first = writer.writeRecord(new PriceUpdate(0, 1, 2));
+		for (int i = 0; i < MappedBusReader.MAX_TIMEOUT_COUNT + 1; i++) {
+			assertEquals(false, reader.next());
+		}
+
+		// committing a later record publishes the first one too, which the reader then waits for
+		long second = writer.writeRecord(new PriceUpdate(3, 4, 5));
+		assertEquals(true, writer.commit(second));
+		assertEquals(false, reader.next());
+		assertEquals(true, writer.commit(first));
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		for (int i = 0; i < 2; i++) {
+			assertEquals(true, reader.next());
+			reader.readMessage(priceUpdate);
+			assertEquals(3 * i, priceUpdate.getSource());
+		}
+		assertEquals(false, reader.next());
+
+		// the reader follows the writer into the next segment
+		writer.write(new PriceUpdate(6, 7, 8));
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(6, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testReadPaddedVariableLengthSegmented() throws Exception {
+		int fileSize = PaddedStructure.Data + 64;
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, 100);
+		writer.setPadded(true);
+		writer.setVariableLength(true);
+		writer.setSegmented(true);
+		writer.open();
+
+		// 40 bytes each, so the rest of each segment is padded
+		byte[] data = new byte[25];
+		for (int i = 0; i < 3; i++) {
+			data[0] = (byte)i;
+			writer.write(data, 0, data.length);
+		}
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, 100);
+		reader.setPadded(true);
+		reader.setVariableLength(true);
+		reader.setSegmented(true);
+		reader.open();
+
+		byte[] buffer = new byte[100];
+		for (int i = 0; i < 3; i++) {
+			while (!reader.next()) {
+			}
+			assertEquals(25, reader.readBuffer(buffer, 0));
+			assertEquals(i, buffer[0]);
+		}
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testOutOfOrder() throws Exception {
+		MappedBusWriter slow = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		slow.open();
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setOutOfOrder(4);
+		reader.open();
+
+		// the records written after the claimed one are read before it
+		MappedBusRecord record = slow.tryClaim(RECORD_SIZE);
+		writer.write(new PriceUpdate(1, 0, 0));
+		writer.write(new PriceUpdate(2, 0, 0));
+		PriceUpdate priceUpdate = new PriceUpdate();
+		for (int i = 1; i <= 2; i++) {
+			assertEquals(true, reader.next());
+			reader.readMessage(priceUpdate);
+			assertEquals(i, priceUpdate.getSource());
+		}
+		assertEquals(false, reader.next());
+
+		record.putInt(0, 7);
+		assertEquals(true, slow.commit());
+		writer.write(new PriceUpdate(3, 0, 0));
+		assertEquals(true, reader.next());
+		assertEquals(7, reader.readRecord().getInt(0));
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(3, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+
+		// a pending record times out on its own
+		reader.close();
+		reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setOutOfOrder(4);
+		reader.setTimeout(0);
+		reader.open();
+		reader.seekToTail();
+		slow.tryClaim(RECORD_SIZE);
+		writer.write(new PriceUpdate(4, 0, 0));
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(4, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+		assertEquals(false, slow.commit());
+		reader.close();
+	}
+
+	@Test public void testOutOfOrderWriterOrder() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setOutOfOrder(4);
+		reader.open();
+
+		MappedBusRecord record = writer.tryClaim(RECORD_SIZE);
+		assertEquals(false, reader.next());
+
+		// the writer commits the pending record and writes the next one between the two steps of next()
+		assertEquals(false, reader.nextPending());
+		record.putInt(0, 7);
+		assertEquals(true, writer.commit());
+		writer.write(new PriceUpdate(1, 0, 0));
+		assertEquals(true, reader.nextFrontier());
+		assertEquals(7, reader.readRecord().getInt(0));
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(1, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+		reader.close();
+		writer.close();
+	}
+
+	@Test public void testOutOfOrderUnread() throws Exception {
+		MappedBusWriter slow = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		slow.open();
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setOutOfOrder(4);
+		reader.open();
+
+		MappedBusRecord record = slow.tryClaim(RECORD_SIZE);
+		writer.write(new PriceUpdate(1, 0, 0));
+		writer.write(new PriceUpdate(2, 0, 0));
+
+		// the first record is skipped without being read
+		assertEquals(true, reader.next());
+		record.putInt(0, 7);
+		assertEquals(true, slow.commit());
+		assertEquals(true, reader.next());
+		assertEquals(7, reader.readRecord().getInt(0));
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(2, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+		reader.close();
+		writer.close();
+		slow.close();
+	}
+
+	@Test public void testOutOfOrderTypeOnly() throws Exception {
+		MappedBusWriter slow = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		slow.open();
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setOutOfOrder(4);
+		reader.open();
+
+		MappedBusRecord record = slow.tryClaim(RECORD_SIZE);
+		writer.write(new PriceUpdate(1, 0, 0));
+		writer.write(new PriceUpdate(2, 0, 0));
+
+		// only the type of the first record is read, as a dispatcher does for an unknown type
+		assertEquals(true, reader.next());
+		assertEquals(PriceUpdate.TYPE, reader.readType());
+		record.putInt(0, 7);
+		assertEquals(true, slow.commit());
+		writer.write(new PriceUpdate(3, 0, 0));
+		assertEquals(true, reader.next());
+		assertEquals(7, reader.readRecord().getInt(0));
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		for (int i = 2; i <= 3; i++) {
+			assertEquals(true, reader.next());
+			reader.readMessage(priceUpdate);
+			assertEquals(i, priceUpdate.getSource());
+		}
+		assertEquals(false, reader.next());
+		reader.close();
+		writer.close();
+		slow.close();
+	}
+
+	@Test public void testOutOfOrderFull() throws Exception {
+		MappedBusWriter slow1 = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		slow1.open();
+		MappedBusWriter slow2 = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		slow2.open();
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setOutOfOrder(1);
+		reader.open();
+
+		// with the pending list full the reader waits for the next record in order
+		slow1.tryClaim(RECORD_SIZE);
+		slow2.tryClaim(RECORD_SIZE).putInt(0, 2);
+		writer.write(new PriceUpdate(3, 0, 0));
+		for (int i = 0; i < MappedBusReader.MAX_TIMEOUT_COUNT; i++) {
+			assertEquals(false, reader.next());
+		}
+		assertEquals(true, slow2.commit());
+		assertEquals(true, reader.next());
+		assertEquals(2, reader.readRecord().getInt(0));
+		assertEquals(true, reader.next());
+		PriceUpdate priceUpdate = new PriceUpdate();
+		reader.readMessage(priceUpdate);
+		assertEquals(3, priceUpdate.getSource());
+
+		// the rolled back pending record is dropped
+		slow1.abort();
+		assertEquals(false, reader.next());
+		writer.write(new PriceUpdate(4, 0, 0));
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(4, priceUpdate.getSource());
+	}
+
+	@Test public void testOutOfOrderSegmented() throws Exception {
+		int fileSize = Length.Limit + 2 * (Length.RecordHeader + RECORD_SIZE);
+		MappedBusWriter slow = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		slow.setSegmented(true);
+		slow.open();
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setSegmented(true);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, RECORD_SIZE);
+		reader.setSegmented(true);
+		reader.setOutOfOrder(4);
+		reader.open();
+
+		// the reader stays in the segment until its pending record is committed
+		slow.tryClaim(RECORD_SIZE).putInt(0, 1);
+		writer.write(new PriceUpdate(2, 0, 0));
+		writer.write(new PriceUpdate(3, 0, 0));
+		PriceUpdate priceUpdate = new PriceUpdate();
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(2, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+		assertEquals(true, slow.commit());
+		assertEquals(true, reader.next());
+		assertEquals(1, reader.readRecord().getInt(0));
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(3, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testPoll() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		for (int i = 0; i < 5; i++) {
+			writer.write(new PriceUpdate(i, 0, 0));
+		}
+
+		// the third record is not committed yet
+		MemoryMappedFile mem = new MemoryMappedFile(FILE_NAME, FILE_SIZE);
+		long third = Structure.Data + 2 * (Length.RecordHeader + RECORD_SIZE);
+		mem.putIntVolatile(third, StatusFlag.NotSet);
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.open();
+
+		final List<Integer> sources = new ArrayList<Integer>();
+		MappedBusHandler handler = new MappedBusHandler() {
+			PriceUpdate priceUpdate = new PriceUpdate();
+			public void onRecord(MappedBusReader reader) {
+				reader.readMessage(priceUpdate);
+				sources.add(priceUpdate.getSource());
+			}
+		};
+		assertEquals(1, reader.poll(handler, 1));
+		assertEquals(1, reader.poll(handler, 10));
+		assertEquals(0, reader.poll(handler, 10));
+		assertEquals(Arrays.asList(0, 1), sources);
+
+		mem.putIntVolatile(third, StatusFlag.Commit);
+		assertEquals(3, reader.poll(handler, 10));
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), sources);
+		assertEquals(true, reader.hasRecovered());
+	}
+
+	@Test public void testTake() throws Exception {
+		final MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setWaitStrategy(new MappedBusWaitStrategy.Park(1, 1000));
+		reader.open();
+
+		Thread writerThread = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+					writer.write(new PriceUpdate(1, 2, 3));
+				} catch(Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		writerThread.start();
+
+		reader.take();
+		PriceUpdate priceUpdate = new PriceUpdate();
+		reader.readMessage(priceUpdate);
+		assertEquals(1, priceUpdate.getSource());
+		writerThread.join();
+	}
+
+	@Test public void testReadRecord() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+
+		byte[] data = {0, 1, 2, 3};
+		writer.write(data, 0, data.length);
+		writer.write(new PriceUpdate(3, 4, 5));
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.open();
+
+		assertEquals(true, reader.next());
+		MappedBusRecord record = reader.readRecord();
+		assertEquals(4, record.type());
+		assertEquals(RECORD_SIZE, record.capacity());
+		assertEquals(2, record.getByte(2));
+		byte[] buffer = new byte[4];
+		record.getBytes(0, buffer, 0, buffer.length);
+		assertArrayEquals(data, buffer);
+
+		assertEquals(true, reader.next());
+		record = reader.readRecord();
+		assertEquals(PriceUpdate.TYPE, record.type());
+		assertEquals(3, record.getInt(0));
+		assertEquals(4, record.getInt(4));
+		assertEquals(5, record.getInt(8));
+		PriceUpdate priceUpdate = new PriceUpdate();
+		record.getMessage(priceUpdate);
+		assertEquals(4, priceUpdate.getPrice());
+
+		assertEquals(false, reader.next());
+		assertEquals(true, reader.hasRecovered());
+	}
+
+	@Test public void testReadRecordVariableLength() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, 100);
+		writer.setVariableLength(true);
+		writer.open();
+		writer.write(new byte[20], 0, 20);
+		writer.write(new PriceUpdate(3, 4, 5), RECORD_SIZE);
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, 100);
+		reader.setVariableLength(true);
+		reader.open();
+
+		assertEquals(true, reader.next());
+		MappedBusRecord record = reader.readRecord();
+		assertEquals(20, record.type());
+		assertEquals(20, record.capacity());
+
+		assertEquals(true, reader.next());
+		record = reader.readRecord();
+		assertEquals(5, record.getInt(8));
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testSubscription() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		for (int i = 0; i < 5; i++) {
+			writer.write(new PriceUpdate(i, 0, 0));
+		}
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setSubscription("a");
+		reader.open();
+		for (int i = 0; i < 2; i++) {
+			assertEquals(true, reader.next());
+			reader.readMessage(priceUpdate);
+			assertEquals(i, priceUpdate.getSource());
+		}
+		// the third record is not consumed until the reader steps past it
+		assertEquals(true, reader.next());
+		reader.close();
+
+		reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setSubscription("a");
+		reader.open();
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(2, priceUpdate.getSource());
+		final List<Integer> sources = new ArrayList<Integer>();
+		MappedBusHandler handler = new MappedBusHandler() {
+			PriceUpdate priceUpdate = new PriceUpdate();
+			public void onRecord(MappedBusReader reader) {
+				reader.readMessage(priceUpdate);
+				sources.add(priceUpdate.getSource());
+			}
+		};
+		assertEquals(2, reader.poll(handler, 10));
+		assertEquals(Arrays.asList(3, 4), sources);
+		assertEquals(true, reader.hasRecovered());
+		reader.close();
+
+		// the records handed to the handler were consumed
+		reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setSubscription("a");
+		reader.open();
+		assertEquals(false, reader.next());
+		reader.close();
+
+		// another subscription starts from the beginning
+		reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setSubscription("b");
+		reader.open();
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(0, priceUpdate.getSource());
+		reader.close();
+	}
+
+	@Test public void testSubscriptionSegmented() throws Exception {
+		long fileSize = Length.Limit + 4 * (Length.RecordHeader + RECORD_SIZE);
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setSegmented(true);
+		writer.open();
+		for (int i = 0; i < 10; i++) {
+			writer.write(new PriceUpdate(i, 0, 0));
+		}
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, RECORD_SIZE);
+		reader.setSegmented(true);
+		reader.setSubscription("a");
+		reader.open();
+		for (int i = 0; i < 6; i++) {
+			assertEquals(true, reader.next());
+			reader.readMessage(priceUpdate);
+		}
+		assertEquals(true, reader.next());
+		reader.close();
+
+		reader = new MappedBusReader(FILE_NAME, fileSize, RECORD_SIZE);
+		reader.setSegmented(true);
+		reader.setSubscription("a");
+		reader.open();
+		for (int i = 6; i < 10; i++) {
+			assertEquals(true, reader.next());
+			reader.readMessage(priceUpdate);
+			assertEquals(i, priceUpdate.getSource());
+		}
+		assertEquals(false, reader.next());
+		reader.close();
+	}
+
+	@Test public void testSeek() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+		for (int i = 0; i < 10; i++) {
+			writer.write(new PriceUpdate(i, 0, 0));
+		}
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.open();
+		reader.seek(5);
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(5, priceUpdate.getSource());
+
+		reader.seek(2);
+		assertEquals(true, reader.next());
+		assertEquals(PriceUpdate.TYPE, reader.readType());
+		reader.seek(9);
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(9, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+
+		try {
+			reader.seek(FILE_SIZE);
+			fail();
+		} catch (EOFException e) {
+			// the record would be beyond the end of the file
+		}
+	}
+
+	@Test public void testSeekSegmented() throws Exception {
+		long fileSize = Length.Limit + 4 * (Length.RecordHeader + RECORD_SIZE);
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setSegmented(true);
+		writer.open();
+		for (int i = 0; i < 10; i++) {
+			writer.write(new PriceUpdate(i, 0, 0));
+		}
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, RECORD_SIZE);
+		reader.setSegmented(true);
+		reader.open();
+		reader.seek(6);
+		for (int i = 6; i < 10; i++) {
+			assertEquals(true, reader.next());
+			reader.readMessage(priceUpdate);
+			assertEquals(i, priceUpdate.getSource());
+		}
+		assertEquals(false, reader.next());
+
+		reader.seek(1);
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(1, priceUpdate.getSource());
+
+		// seeking beyond the last segment doesn't create the segment
+		try {
+			reader.seek(12);
+			fail();
+		} catch (EOFException e) {
+			assertEquals(false, new File(MappedBusFiles.segment(FILE_NAME, 3)).exists());
+		}
+	}
+
+	@Test public void testSeekToTail() throws Exception {
+		long fileSize = Length.Limit + 4 * (Length.RecordHeader + RECORD_SIZE);
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setSegmented(true);
+		writer.open();
+		for (int i = 0; i < 6; i++) {
+			writer.write(new PriceUpdate(i, 0, 0));
+		}
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, RECORD_SIZE);
+		reader.setSegmented(true);
+		reader.open();
+		reader.seekToTail();
+		assertEquals(true, reader.hasRecovered());
+		assertEquals(false, reader.next());
+
+		writer.write(new PriceUpdate(6, 0, 0));
+		PriceUpdate priceUpdate = new PriceUpdate();
+		assertEquals(true, reader.next());
+		reader.readMessage(priceUpdate);
+		assertEquals(6, priceUpdate.getSource());
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testSeekToTime() throws Exception {
+		// the status flag is padded to eight bytes so the timestamp is aligned
+		long fileSize = Length.Limit + 4 * MappedBusWriter.align(2 * Length.Timestamp + Length.Metadata + RECORD_SIZE);
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setSegmented(true);
+		writer.setTimestamped(true);
+		writer.open();
+		long[] times = new long[3];
+		for (int i = 0; i < 9; i++) {
+			if (i % 3 == 0) {
+				Thread.sleep(5);
+				times[i / 3] = System.currentTimeMillis();
+				Thread.sleep(5);
+			}
+			writer.write(new PriceUpdate(i, 0, 0));
+		}
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, RECORD_SIZE);
+		reader.setSegmented(true);
+		reader.setTimestamped(true);
+		reader.open();
+		for (int i = 2; i >= 0; i--) {
+			reader.seekToTime(times[i]);
+			assertEquals(true, reader.next());
+			assertTrue(reader.readTimestamp() >= times[i]);
+			reader.readMessage(priceUpdate);
+			assertEquals(3 * i, priceUpdate.getSource());
+		}
+		reader.seekToTime(System.currentTimeMillis() + 1000);
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testSeekToTimeVariableLength() throws Exception {
+		int recordSize = 1000;
+		long fileSize = 1000000;
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, recordSize);
+		writer.setVariableLength(true);
+		writer.setTimestamped(true);
+		writer.open();
+		long[] times = new long[4];
+		byte[] data = new byte[recordSize];
+		for (int i = 0; i < 400; i++) {
+			if (i % 100 == 0) {
+				Thread.sleep(5);
+				times[i / 100] = System.currentTimeMillis();
+				Thread.sleep(5);
+			}
+			data[0] = (byte)i;
+			data[1] = (byte)(i >> 8);
+			writer.write(data, 0, 100 + i % 900);
+		}
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, recordSize);
+		reader.setVariableLength(true);
+		reader.setTimestamped(true);
+		reader.open();
+		for (int i = 3; i >= 0; i--) {
+			reader.seekToTime(times[i]);
+			assertEquals(true, reader.next());
+			assertEquals(100 + (100 * i) % 900, reader.readBuffer(data, 0));
+			assertEquals(100 * i, (data[0] & 0xff) | ((data[1] & 0xff) << 8));
+		}
+	}
+
 	class PriceUpdate implements MappedBusMessage {
 		
 		public static final int TYPE = 0;
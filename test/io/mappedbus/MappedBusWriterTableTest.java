@@ -0,0 +1,187 @@
+package io.mappedbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import io.mappedbus.MappedBusConstants.MetricsCounter;
+import io.mappedbus.MappedBusConstants.WriterTableLength;
+import io.mappedbus.MappedBusConstants.WriterTableStructure;
+import io.mappedbus.MappedBusConstants.WriterState;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests the writer table and the rollback of records owned by dead writers.
+ *
+ */
+public class MappedBusWriterTableTest {
+
+	public static final String FILE_NAME = "/tmp/MappedBusWriterTableTest";
+
+	public static final long FILE_SIZE = 1000;
+
+	public static final int RECORD_SIZE = 12;
+
+	public static final long DEAD_PID = 999999999L;
+
+	@Before public void before() {
+		deleteFiles();
+	}
+
+	@After public void after() {
+		deleteFiles();
+	}
+
+	private void deleteFiles() {
+		new File(FILE_NAME).delete();
+		new File(MappedBusFiles.writers(FILE_NAME)).delete();
+		new File(MappedBusFiles.metrics(FILE_NAME)).delete();
+	}
+
+	@Test public void testDeadWriter() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.setLiveness(true);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setLiveness(true);
+		reader.setMetrics(true);
+		reader.setTimeout(60000);
+		reader.setHeartbeatTimeout(200);
+		reader.open();
+
+		writer.tryClaim(RECORD_SIZE);
+		// the writer is dead as far as the readers can tell once its heartbeat has stopped and its process is gone
+		writer.writers().stop();
+		MemoryMappedFile table = new MemoryMappedFile(MappedBusFiles.writers(FILE_NAME), WriterTableLength.Writers);
+		table.putLongVolatile(MappedBusWriterTable.entry(0) + WriterTableStructure.Pid, DEAD_PID);
+
+		MappedBusMonitor monitor = new MappedBusMonitor(FILE_NAME);
+		monitor.open();
+		long start = System.currentTimeMillis();
+		while (monitor.get(MetricsCounter.DeadWriter) == 0 && System.currentTimeMillis() - start < 5000) {
+			assertEquals(false, reader.next());
+		}
+		assertEquals(1, monitor.get(MetricsCounter.DeadWriter));
+		assertEquals(0, monitor.get(MetricsCounter.TimedOut));
+		assertEquals(false, writer.commit());
+
+		byte[] buffer = new byte[RECORD_SIZE];
+		writer.write(buffer, 0, RECORD_SIZE);
+		assertEquals(true, reader.next());
+
+		monitor.close();
+		table.unmap();
+		reader.close();
+		writer.close();
+	}
+
+	@Test public void testLiveWriter() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.setLiveness(true);
+		writer.open();
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setLiveness(true);
+		reader.setTimeout(60000);
+		reader.open();
+
+		// a slow writer keeps its record for longer than the heartbeat timeout
+		writer.tryClaim(RECORD_SIZE);
+		long start = System.currentTimeMillis();
+		while (System.currentTimeMillis() - start < 2 * MappedBusWriterTable.HEARTBEAT_TIMEOUT) {
+			assertEquals(false, reader.next());
+		}
+		assertEquals(true, writer.commit());
+		assertEquals(true, reader.next());
+
+		reader.close();
+		writer.close();
+	}
+
+	@Test public void testStalledWriter() throws Exception {
+		MappedBusWriterTable table = MappedBusWriterTable.open(FILE_NAME);
+		MemoryMappedFile mem = new MemoryMappedFile(MappedBusFiles.writers(FILE_NAME), WriterTableLength.Writers);
+		long entry = MappedBusWriterTable.entry(0);
+		mem.putLong(entry + WriterTableStructure.Start, 0);
+		mem.putLong(entry + WriterTableStructure.End, 100);
+		mem.putLong(entry + WriterTableStructure.Heartbeat, 0);
+		mem.putLong(entry + WriterTableStructure.Pid, MappedBusWriterTable.pid());
+		mem.putIntVolatile(entry + WriterTableStructure.State, WriterState.Active);
+		boolean proc = new File("/proc/self").exists();
+
+		// a live process is alive however old its heartbeat is, where /proc is available
+		assertEquals(!proc, table.isOwnerDead(50, 1000, 1000));
+
+		// a process missing from /proc, as in another pid namespace, is alive while its heartbeat is fresh
+		mem.putLong(entry + WriterTableStructure.Pid, DEAD_PID);
+		assertEquals(true, table.isOwnerDead(50, 1000, 1000));
+		mem.putLongVolatile(entry + WriterTableStructure.Heartbeat, System.currentTimeMillis());
+		assertEquals(false, table.isOwnerDead(50, 1000, 1000));
+
+		// without a process id the heartbeat decides, with the timeout of the reader as the shortest timeout
+		mem.putLong(entry + WriterTableStructure.Pid, 0);
+		mem.putLongVolatile(entry + WriterTableStructure.Heartbeat, System.currentTimeMillis() - 2000);
+		assertEquals(true, table.isOwnerDead(50, 1000, 1000));
+		assertEquals(false, table.isOwnerDead(50, 1000, 5000));
+
+		mem.unmap();
+		table.close();
+	}
+
+	@Test public void testClaimedEntry() throws Exception {
+		MemoryMappedFile mem = new MemoryMappedFile(MappedBusFiles.writers(FILE_NAME), WriterTableLength.Writers);
+		for (int i = 0; i < WriterTableLength.MaxWriters; i++) {
+			mem.putLong(MappedBusWriterTable.entry(i) + WriterTableStructure.Heartbeat, System.currentTimeMillis());
+			mem.putIntVolatile(MappedBusWriterTable.entry(i) + WriterTableStructure.State, WriterState.Claimed);
+		}
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.setLiveness(true);
+		try {
+			writer.open();
+			fail();
+		} catch (IOException e) {
+			// the entries may still be registering
+		}
+
+		// an entry left claimed by a writer which died while registering is taken over
+		long entry = MappedBusWriterTable.entry(5);
+		mem.putLongVolatile(entry + WriterTableStructure.Heartbeat, 0);
+		writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.setLiveness(true);
+		writer.open();
+		assertEquals(WriterState.Active, mem.getIntVolatile(entry + WriterTableStructure.State));
+		assertEquals(MappedBusWriterTable.pid(), mem.getLong(entry + WriterTableStructure.Pid));
+		writer.close();
+		mem.unmap();
+	}
+
+	@Test public void testEntries() throws Exception {
+		MappedBusWriter[] writers = new MappedBusWriter[WriterTableLength.MaxWriters];
+		for (int i = 0; i < writers.length; i++) {
+			writers[i] = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+			writers[i].setLiveness(true);
+			writers[i].open();
+		}
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.setLiveness(true);
+		try {
+			writer.open();
+			fail();
+		} catch (IOException e) {
+			// all entries are used by live writers
+		}
+
+		// the entry of a closed writer is reused
+		writers[3].close();
+		writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.setLiveness(true);
+		writer.open();
+		writers[3] = writer;
+		for (MappedBusWriter w : writers) {
+			w.close();
+		}
+	}
+}
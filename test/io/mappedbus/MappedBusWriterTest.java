@@ -1,9 +1,11 @@
 package io.mappedbus;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import io.mappedbus.MappedBusWriter;
 import io.mappedbus.MemoryMappedFile;
 import io.mappedbus.MappedBusConstants.Length;
+import io.mappedbus.MappedBusConstants.StatusFlag;
 import io.mappedbus.MappedBusConstants.Structure;
 
 import java.io.EOFException;
@@ -26,11 +28,18 @@ public class MappedBusWriterTest {
 	public static final int RECORD_SIZE = 12;
 	
 	@Before public void before() {
-		new File(FILE_NAME).delete();
+		deleteFiles();
 	}
 	
 	@After public void after() {
+		deleteFiles();
+	}
+
+	private void deleteFiles() {
 		new File(FILE_NAME).delete();
+		for (int i = 0; i < 10; i++) {
+			new File(MappedBusFiles.segment(FILE_NAME, i)).delete();
+		}
 	}
 	
 	@Test(expected=EOFException.class) public void testWriteEOF() throws Exception {
@@ -79,6 +88,254 @@ public class MappedBusWriterTest {
 		assertEquals(Structure.Data + 2 * (Length.StatusFlag + Length.Metadata + RECORD_SIZE), mem.getLongVolatile(Structure.Limit));
 	}
 	
+	@Test public void testWriteSegmented() throws Exception {
+		int fileSize = Length.Limit + 2 * (Length.RecordHeader + RECORD_SIZE);
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setSegmented(true);
+		writer.open();
+		byte[] data = new byte[RECORD_SIZE];
+		for (int i = 0; i < 5; i++) {
+			writer.write(data, 0, RECORD_SIZE);
+		}
+		writer.close();
+
+		assertEquals(true, new File(MappedBusFiles.segment(FILE_NAME, 0)).exists());
+		assertEquals(true, new File(MappedBusFiles.segment(FILE_NAME, 1)).exists());
+		assertEquals(true, new File(MappedBusFiles.segment(FILE_NAME, 2)).exists());
+		assertEquals(false, new File(MappedBusFiles.segment(FILE_NAME, 3)).exists());
+
+		MemoryMappedFile mem = new MemoryMappedFile(MappedBusFiles.segment(FILE_NAME, 2), fileSize);
+		assertEquals(Structure.Data + Length.RecordHeader + RECORD_SIZE, mem.getLongVolatile(Structure.Limit));
+
+		// a new writer continues in the last segment
+		writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setSegmented(true);
+		writer.open();
+		writer.write(data, 0, RECORD_SIZE);
+		assertEquals(Structure.Data + 2 * (Length.RecordHeader + RECORD_SIZE), mem.getLongVolatile(Structure.Limit));
+		assertEquals(false, new File(MappedBusFiles.segment(FILE_NAME, 3)).exists());
+	}
+
+	@Test public void testWriteVariableLength() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, 100);
+		writer.setVariableLength(true);
+		writer.open();
+
+		MemoryMappedFile mem = new MemoryMappedFile(FILE_NAME, FILE_SIZE);
+
+		byte[] data1 = {0, 1, 2, 3};
+		writer.write(data1, 0, data1.length);
+		assertEquals(Structure.Data + 16, mem.getLongVolatile(Structure.Limit));
+		assertEquals(16, mem.getInt(Structure.Data + Length.StatusFlag));
+
+		byte[] data2 = new byte[21];
+		writer.write(data2, 0, data2.length);
+		assertEquals(Structure.Data + 16 + 40, mem.getLongVolatile(Structure.Limit));
+		assertEquals(40, mem.getInt(Structure.Data + 16 + Length.StatusFlag));
+
+		PriceUpdate priceUpdate = new PriceUpdate();
+		writer.write(priceUpdate, RECORD_SIZE);
+		assertEquals(Structure.Data + 16 + 40 + 24, mem.getLongVolatile(Structure.Limit));
+	}
+
+	@Test(expected=EOFException.class) public void testWriteVariableLengthEOF() throws Exception {
+		int fileSize = Length.Limit + 64;
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, 100);
+		writer.setVariableLength(true);
+		writer.open();
+		byte[] data = new byte[36];
+		writer.write(data, 0, data.length);
+		writer.write(data, 0, data.length); // throws EOFException
+	}
+
+	@Test public void testWriteBatch() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+
+		MemoryMappedFile mem = new MemoryMappedFile(FILE_NAME, FILE_SIZE);
+
+		PriceUpdate[] priceUpdates = {new PriceUpdate(0, 1, 2), new PriceUpdate(3, 4, 5), new PriceUpdate(6, 7, 8)};
+		assertEquals(3, writer.write(priceUpdates, 0, priceUpdates.length));
+		assertEquals(Structure.Data + 3 * (Length.RecordHeader + RECORD_SIZE), mem.getLongVolatile(Structure.Limit));
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.open();
+		PriceUpdate priceUpdate = new PriceUpdate();
+		for (int i = 0; i < priceUpdates.length; i++) {
+			assertEquals(true, reader.next());
+			reader.readMessage(priceUpdate);
+			assertEquals(priceUpdates[i].getSource(), priceUpdate.getSource());
+		}
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testWriteBatchRollback() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+
+		byte[] data = {1, 2, 3};
+		long first = writer.claim(3);
+		writer.writeRecord(first, 0, data, 0, data.length);
+
+		// a reader times out on the first record and rolls it back
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.setTimeout(0);
+		reader.open();
+		for (int i = 0; i < MappedBusReader.MAX_TIMEOUT_COUNT + 1; i++) {
+			assertEquals(false, reader.next());
+		}
+
+		writer.writeRecord(first, 1, data, 0, data.length);
+		writer.writeRecord(first, 2, data, 0, data.length);
+		assertEquals(2, writer.commit(first, 3));
+
+		byte[] buffer = new byte[3];
+		assertEquals(true, reader.next());
+		assertEquals(3, reader.readBuffer(buffer, 0));
+		assertEquals(true, reader.next());
+		assertEquals(3, reader.readBuffer(buffer, 0));
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testWriteBatchEOF() throws Exception {
+		int fileSize = Length.Limit + 3 * (Length.RecordHeader + RECORD_SIZE);
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.open();
+		byte[] data = new byte[RECORD_SIZE];
+		writer.write(data, 0, RECORD_SIZE);
+		try {
+			writer.claim(3);
+			fail();
+		} catch (EOFException e) {
+			// the batch doesn't fit
+		}
+
+		// the records of the batch which fit were rolled back, so readers don't wait for them
+		MemoryMappedFile mem = new MemoryMappedFile(FILE_NAME, fileSize);
+		long second = Structure.Data + Length.RecordHeader + RECORD_SIZE;
+		assertEquals(StatusFlag.Rollback, mem.getIntVolatile(second));
+		assertEquals(StatusFlag.Rollback, mem.getIntVolatile(second + Length.RecordHeader + RECORD_SIZE));
+	}
+
+	@Test public void testWriteAligned() throws Exception {
+		int recordSize = 10;
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, recordSize);
+		writer.setAligned(true);
+		writer.open();
+		byte[] data = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+		writer.write(data, 0, recordSize);
+		writer.write(data, 0, recordSize);
+
+		// each record takes up a multiple of eight bytes
+		MemoryMappedFile mem = new MemoryMappedFile(FILE_NAME, FILE_SIZE);
+		assertEquals(Structure.Data + 2 * 24, mem.getLongVolatile(Structure.Limit));
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, recordSize);
+		reader.setAligned(true);
+		reader.open();
+		byte[] buffer = new byte[recordSize];
+		for (int i = 0; i < 2; i++) {
+			assertEquals(true, reader.next());
+			assertEquals(recordSize, reader.readBuffer(buffer, 0));
+			assertEquals(10, buffer[9]);
+		}
+		assertEquals(false, reader.next());
+		reader.close();
+		writer.close();
+	}
+
+	@Test public void testWriteTimestamped() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.setTimestamped(true);
+		writer.open();
+
+		long start = System.currentTimeMillis();
+		byte[] data = new byte[RECORD_SIZE];
+		writer.write(data, 0, RECORD_SIZE);
+
+		// the timestamp follows the status flag padded to eight bytes
+		MemoryMappedFile mem = new MemoryMappedFile(FILE_NAME, FILE_SIZE);
+		long time = mem.getLongVolatile(Structure.Data + 8);
+		assertEquals(true, time >= start && time <= System.currentTimeMillis());
+		assertEquals(Structure.Data + MappedBusWriter.align(16 + Length.Metadata + RECORD_SIZE), mem.getLongVolatile(Structure.Limit));
+	}
+
+	@Test public void testTryClaim() throws Exception {
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		writer.open();
+
+		MappedBusRecord record = writer.tryClaim(12);
+		assertEquals(12, record.capacity());
+		record.putInt(0, 1);
+		record.putLong(4, 2L);
+		try {
+			writer.tryClaim(12);
+			fail();
+		} catch (IllegalStateException e) {
+			// the first claim is still outstanding
+		}
+		assertEquals(true, writer.commit());
+
+		record = writer.tryClaim(4);
+		record.putInt(0, 3);
+		writer.abort();
+
+		record = writer.tryClaim(4);
+		record.putInt(0, 4);
+		assertEquals(true, writer.commit());
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, FILE_SIZE, RECORD_SIZE);
+		reader.open();
+		assertEquals(true, reader.next());
+		record = reader.readRecord();
+		assertEquals(12, record.type());
+		assertEquals(1, record.getInt(0));
+		assertEquals(2L, record.getLong(4));
+		assertEquals(false, reader.next()); // the aborted record is skipped
+		assertEquals(true, reader.next());
+		record = reader.readRecord();
+		assertEquals(4, record.type());
+		assertEquals(4, record.getInt(0));
+		assertEquals(false, reader.next());
+	}
+
+	@Test public void testPretouch() throws Exception {
+		long fileSize = 16 * MappedBusPretoucher.PAGE_SIZE;
+		MappedBusWriter writer = new MappedBusWriter(FILE_NAME, fileSize, RECORD_SIZE);
+		writer.setSegmented(true);
+		writer.setPretouch(4 * MappedBusPretoucher.PAGE_SIZE);
+		writer.open();
+		waitForPretouch(writer, 4 * MappedBusPretoucher.PAGE_SIZE);
+
+		// fill up the first segment, the pretoucher then moves on to the second one
+		int records = (int)((fileSize - Structure.Data) / (Length.RecordHeader + RECORD_SIZE)) + 1;
+		for (int i = 0; i < records; i++) {
+			writer.write(new PriceUpdate(i, 0, 0));
+		}
+		waitForPretouch(writer, 4 * MappedBusPretoucher.PAGE_SIZE);
+		writer.close();
+
+		MappedBusReader reader = new MappedBusReader(FILE_NAME, fileSize, RECORD_SIZE);
+		reader.setSegmented(true);
+		reader.open();
+		PriceUpdate priceUpdate = new PriceUpdate();
+		for (int i = 0; i < records; i++) {
+			assertEquals(true, reader.next());
+			reader.readMessage(priceUpdate);
+			assertEquals(i, priceUpdate.getSource());
+		}
+		assertEquals(false, reader.next());
+	}
+
+	private void waitForPretouch(MappedBusWriter writer, long position) throws Exception {
+		MappedBusPretoucher pretoucher = writer.pretoucher();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pretoucher.touched() < position) {
+			assertEquals(true, System.currentTimeMillis() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
 	class PriceUpdate implements MappedBusMessage {
 		
 		public static final int TYPE = 0;
@@ -3,6 +3,7 @@ package io.mappedbus;
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
+import java.nio.file.Files;
 
 import io.mappedbus.MemoryMappedFile;
 
@@ -24,6 +25,50 @@ public class MemoryMappedFileTest {
 		new File(FILE_NAME).delete();
 	}	
 
+	@Test public void testAccess() throws Exception {
+		MemoryMappedFile m = new MemoryMappedFile(FILE_NAME, FILE_SIZE);
+		m.putByte(1, (byte)1);
+		m.putInt(4, 2);
+		m.putLong(8, 3L);
+		assertEquals(1, m.getByte(1));
+		assertEquals(2, m.getIntVolatile(4));
+		assertEquals(3L, m.getLongVolatile(8));
+
+		assertEquals(true, m.compareAndSwapInt(4, 2, 4));
+		assertEquals(false, m.compareAndSwapInt(4, 2, 5));
+		assertEquals(true, m.compareAndSwapLong(8, 3L, 6L));
+		assertEquals(false, m.compareAndSwapLong(8, 3L, 7L));
+		assertEquals(6L, m.getAndAddLong(8, 10L));
+		m.putLongOrdered(16, 16L);
+		assertEquals(16L, m.getLongVolatile(16));
+		assertEquals(16L, m.getAndAddLong(8, 0L));
+
+		byte[] data = {1, 2, 3, 4, 5};
+		m.setBytes(100, data, 1, 3);
+		byte[] buffer = new byte[5];
+		m.getBytes(99, buffer, 0, 5);
+		assertEquals(0, buffer[0]);
+		assertEquals(2, buffer[1]);
+		assertEquals(4, buffer[3]);
+		assertEquals(0, buffer[4]);
+		m.unmap();
+	}
+
+	@Test public void testUnmap() throws Exception {
+		File maps = new File("/proc/self/maps");
+		if (!maps.exists()) {
+			return;
+		}
+		MemoryMappedFile m = new MemoryMappedFile(FILE_NAME, FILE_SIZE);
+		assertEquals(true, isMapped(maps));
+		m.unmap();
+		assertEquals(false, isMapped(maps));
+	}
+
+	private boolean isMapped(File maps) throws Exception {
+		return new String(Files.readAllBytes(maps.toPath())).contains(FILE_NAME);
+	}
+
 	@Test public void testVolatility() {
 		final int LIMIT = 0;
 		final int COMMIT = 8;
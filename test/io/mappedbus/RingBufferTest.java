@@ -0,0 +1,202 @@
+package io.mappedbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.mappedbus.MappedBusConstants.PaddedLength;
+import io.mappedbus.MappedBusConstants.RingLength;
+import io.mappedbus.MappedBusConstants.RingStructure;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests MappedBusRingWriter and MappedBusRingReader.
+ *
+ */
+public class RingBufferTest {
+
+	public static final String FILE_NAME = "/tmp/ringbuffer-test";
+
+	public static final int SLOTS = 4;
+
+	public static final int RECORD_SIZE = 8;
+
+	public static final int WRAP_SLOTS = 1024;
+
+	public static final int NUM_RECORDS = 1000000;
+
+	@Before public void before() {
+		new File(FILE_NAME).delete();
+	}
+
+	@After public void after() {
+		new File(FILE_NAME).delete();
+	}
+
+	@Test public void testWrapAround() throws Exception {
+		final MappedBusRingReader reader = new MappedBusRingReader(FILE_NAME, WRAP_SLOTS, RECORD_SIZE);
+		reader.open();
+
+		Thread writerThread = new Thread() {
+			public void run() {
+				try {
+					MappedBusRingWriter writer = new MappedBusRingWriter(FILE_NAME, WRAP_SLOTS, RECORD_SIZE);
+					writer.open();
+					byte[] data = new byte[RECORD_SIZE];
+					for (int i = 0; i < NUM_RECORDS; i++) {
+						data[0] = (byte)i;
+						data[1] = (byte)(i >> 8);
+						data[2] = (byte)(i >> 16);
+						writer.write(data, 0, data.length);
+					}
+					writer.close();
+				} catch(Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		writerThread.start();
+
+		byte[] data = new byte[RECORD_SIZE];
+		for (int i = 0; i < NUM_RECORDS; i++) {
+			while (!reader.next()) {
+			}
+			assertEquals(RECORD_SIZE, reader.readBuffer(data, 0));
+			assertEquals(i, (data[0] & 0xff) | ((data[1] & 0xff) << 8) | ((data[2] & 0xff) << 16));
+		}
+		writerThread.join();
+		reader.close();
+	}
+
+	@Test public void testLayout() {
+		// the limit and each reader cursor are on cache lines of their own
+		assertEquals(PaddedLength.Padding, RingStructure.Readers);
+		assertEquals(PaddedLength.Padding, RingLength.Reader);
+		assertEquals(RingStructure.Readers + RingLength.MaxReaders * PaddedLength.Padding, RingStructure.Data);
+
+		// the stamp of each slot is aligned
+		assertEquals(24, MappedBusRingWriter.entrySize(10));
+		assertEquals(24, MappedBusRingWriter.entrySize(12));
+		assertEquals(32, MappedBusRingWriter.entrySize(13));
+	}
+
+	@Test public void testFailFast() throws Exception {
+		MappedBusRingWriter writer = new MappedBusRingWriter(FILE_NAME, SLOTS, RECORD_SIZE);
+		writer.setOverflowPolicy(MappedBusRingWriter.OverflowPolicy.FailFast);
+		writer.open();
+
+		MappedBusRingReader reader = new MappedBusRingReader(FILE_NAME, SLOTS, RECORD_SIZE);
+		reader.open();
+
+		byte[] data = new byte[RECORD_SIZE];
+		for (int i = 0; i < SLOTS; i++) {
+			assertEquals(true, writer.write(data, 0, data.length));
+		}
+		assertEquals(false, writer.write(data, 0, data.length));
+
+		// once the first record has been read there's room for one more
+		assertEquals(true, reader.next());
+		reader.readBuffer(data, 0);
+		assertEquals(true, reader.next());
+		assertEquals(true, writer.write(data, 0, data.length));
+		assertEquals(false, writer.write(data, 0, data.length));
+	}
+
+	@Test public void testDropSlowest() throws Exception {
+		MappedBusRingWriter writer = new MappedBusRingWriter(FILE_NAME, SLOTS, RECORD_SIZE);
+		writer.setOverflowPolicy(MappedBusRingWriter.OverflowPolicy.DropSlowest);
+		writer.open();
+
+		MappedBusRingReader reader = new MappedBusRingReader(FILE_NAME, SLOTS, RECORD_SIZE);
+		reader.open();
+
+		byte[] data = new byte[RECORD_SIZE];
+		for (int i = 0; i < SLOTS + 1; i++) {
+			assertEquals(true, writer.write(data, 0, data.length));
+		}
+		try {
+			reader.next();
+			fail();
+		} catch (IOException e) {
+			// the reader was dropped
+		}
+	}
+
+	@Test public void testBlockedByCrashedReader() throws Exception {
+		MappedBusRingWriter writer = new MappedBusRingWriter(FILE_NAME, SLOTS, RECORD_SIZE);
+		writer.setOverflowPolicy(MappedBusRingWriter.OverflowPolicy.Block);
+		writer.setWaitStrategy(new MappedBusWaitStrategy.Park(1, 1000));
+		writer.setReaderTimeout(200);
+		writer.open();
+
+		// the reader never reads, as if it had crashed without unregistering
+		MappedBusRingReader reader = new MappedBusRingReader(FILE_NAME, SLOTS, RECORD_SIZE);
+		reader.open();
+
+		byte[] data = new byte[RECORD_SIZE];
+		for (int i = 0; i < SLOTS; i++) {
+			assertEquals(true, writer.write(data, 0, data.length));
+		}
+		long start = System.currentTimeMillis();
+		assertEquals(true, writer.write(data, 0, data.length));
+		assertTrue(System.currentTimeMillis() - start >= 200);
+		try {
+			reader.next();
+			fail();
+		} catch (IOException e) {
+			// the reader was dropped
+		}
+	}
+
+	@Test public void testOverwrittenWhileRead() throws Exception {
+		MappedBusRingWriter writer = new MappedBusRingWriter(FILE_NAME, SLOTS, RECORD_SIZE);
+		writer.setOverflowPolicy(MappedBusRingWriter.OverflowPolicy.DropSlowest);
+		writer.open();
+
+		MappedBusRingReader reader = new MappedBusRingReader(FILE_NAME, SLOTS, RECORD_SIZE);
+		reader.open();
+
+		byte[] data = new byte[RECORD_SIZE];
+		assertEquals(true, writer.write(data, 0, data.length));
+		assertEquals(true, reader.next());
+
+		// the writer drops the reader and overwrites the record it's about to read
+		data[0] = 42;
+		for (int i = 0; i < SLOTS; i++) {
+			assertEquals(true, writer.write(data, 0, data.length));
+		}
+		try {
+			reader.readBuffer(data, 0);
+			fail();
+		} catch (IOException e) {
+			// the record was overwritten
+		}
+	}
+
+	@Test public void testNoReaders() throws Exception {
+		MappedBusRingWriter writer = new MappedBusRingWriter(FILE_NAME, SLOTS, RECORD_SIZE);
+		writer.setOverflowPolicy(MappedBusRingWriter.OverflowPolicy.FailFast);
+		writer.open();
+
+		byte[] data = new byte[RECORD_SIZE];
+		for (int i = 0; i < 3 * SLOTS; i++) {
+			assertEquals(true, writer.write(data, 0, data.length));
+		}
+
+		// a reader only sees the records written after it was opened
+		MappedBusRingReader reader = new MappedBusRingReader(FILE_NAME, SLOTS, RECORD_SIZE);
+		reader.open();
+		assertEquals(false, reader.next());
+		data[0] = 42;
+		writer.write(data, 0, data.length);
+		assertEquals(true, reader.next());
+		reader.readBuffer(data, 0);
+		assertEquals(42, data[0]);
+		assertEquals(false, reader.next());
+	}
+}